@@ -1,5 +1,7 @@
 package com.mcode.gateway.business;
 
+import com.mcode.gateway.business.dto.BatchInstructionDTO;
+import com.mcode.gateway.business.dto.BroadcastDTO;
 import com.mcode.gateway.business.dto.DeliveryInstructionDTO;
 import com.mcode.gateway.business.dto.MonitorDTO;
 import com.mcode.gateway.business.service.DeviceInstructionService;
@@ -17,6 +19,7 @@ import javax.annotation.Resource;
 import java.lang.management.ThreadInfo;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 设备指令发送api
@@ -29,10 +32,29 @@ public class DeviceInstructionController extends CommonUtil {
     private DeviceInstructionService deviceInstructionService;
 
     @Route(value = "/publish", method = HttpMethod.POST, desc = "推送设备指令")
-    public BaseResult publishInstruction(DeliveryInstructionDTO deliveryInstructionDTO) {
+    public CompletableFuture<BaseResult> publishInstruction(DeliveryInstructionDTO deliveryInstructionDTO) {
         validDTOEmpty(deliveryInstructionDTO);
-        String result = deviceInstructionService.publishInstruction(deliveryInstructionDTO);
-        return new BaseResult(result);
+        return deviceInstructionService.publishInstruction(deliveryInstructionDTO).thenApply(BaseResult::new);
+    }
+
+    @Route(value = "/publish/batch", method = HttpMethod.POST, desc = "批量推送设备指令，返回每条指令的处理结果")
+    public CompletableFuture<BaseResult> publishInstructions(BatchInstructionDTO batchInstructionDTO) {
+        validDTOEmpty(batchInstructionDTO);
+        return deviceInstructionService.publishInstructions(batchInstructionDTO.getInstructions()).thenApply(BaseResult::new);
+    }
+
+    @Idempotent
+    @Route(value = "/broadcast", method = HttpMethod.POST,
+            desc = "按设备类型广播指令，可按环境、节点过滤，每个connector节点只发送一条消息")
+    public CompletableFuture<BaseResult> broadcast(BroadcastDTO broadcastDTO) {
+        validDTOEmpty(broadcastDTO);
+        return deviceInstructionService.broadcast(broadcastDTO).thenApply(BaseResult::new);
+    }
+
+    @Route(value = "/broadcast/status", method = HttpMethod.GET, desc = "查询广播指令的设备响应进度")
+    public BaseResult broadcastStatus(String serialNumber) {
+        validEmpty("流水号", serialNumber);
+        return new BaseResult(deviceInstructionService.broadcastStatus(serialNumber));
     }
 
     @Idempotent(model = Idempotent.Type.LIMITING, timeout = 5000)
@@ -54,12 +76,11 @@ public class DeviceInstructionController extends CommonUtil {
     }
 
     @Route(value = "/dump/connector", method = HttpMethod.GET, desc = "dump线程状态")
-    public BaseResult dumpConnector(String nodeName, Integer eqType) {
+    public CompletableFuture<BaseResult> dumpConnector(String nodeName, Integer eqType) {
         validEmpty("节点名称", nodeName);
         validEmpty("设备类型", eqType);
         log.info("dump{}节点线程", nodeName);
-        String dump = deviceInstructionService.dump(nodeName, eqType);
-        return new BaseResult(dump);
+        return deviceInstructionService.dump(nodeName, eqType).thenApply(BaseResult::new);
     }
 
 }
@@ -0,0 +1,50 @@
+package com.mcode.gateway.business;
+
+import com.mcode.gateway.business.vo.BaseResult;
+import com.mcode.gateway.dispatch.BlockingExecutor;
+import com.mcode.gateway.dispatch.EventMetrics;
+import com.mcode.gateway.dispatch.MqEventUpStream;
+import com.mcode.gateway.mvc.HttpMethod;
+import com.mcode.gateway.mvc.RestManager;
+import com.mcode.gateway.mvc.Route;
+import com.mcode.gateway.rpc.MqConnector;
+import com.mcode.gateway.rpc.serialization.PayloadCompressor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Controller;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * dispatcher运行指标api
+ */
+@Slf4j
+@Controller
+@RestManager("/dispatcher")
+public class DispatcherMetricsController {
+    @Resource
+    private EventMetrics eventMetrics;
+    @Resource
+    private MqEventUpStream mqEventUpStream;
+    @Resource
+    private BlockingExecutor blockingExecutor;
+    @Resource
+    private MqConnector mqConnector;
+    @Resource
+    private PayloadCompressor payloadCompressor;
+
+    @Route(value = "/metrics", method = HttpMethod.GET,
+            desc = "事件处理耗时、事件通道、阻塞线程池、mq收发及压缩统计")
+    public BaseResult metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("events", eventMetrics.stats());
+        metrics.put("lanes", mqEventUpStream.laneStats());
+        metrics.put("blocking", blockingExecutor.stats());
+        metrics.put("upstream", mqConnector.upstreamRouteStats());
+        metrics.put("publish", mqConnector.publishQueueStats());
+        metrics.put("connections", mqConnector.connectionStats());
+        metrics.put("compression", payloadCompressor.stats());
+        return new BaseResult(metrics);
+    }
+}
@@ -4,6 +4,7 @@ import com.mcode.gateway.business.dal.dao.EquipmentRegistry;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.repository.CrudRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface EquipmentDAL extends CrudRepository<EquipmentRegistry, Long>, JpaSpecificationExecutor<EquipmentRegistry> {
@@ -13,6 +14,8 @@ public interface EquipmentDAL extends CrudRepository<EquipmentRegistry, Long>, J
 
     List<EquipmentRegistry> getByUniqueId(String uniqueId);
 
+    List<EquipmentRegistry> getByUniqueIdIn(Collection<String> uniqueIds);
+
     List<EquipmentRegistry> getByEquipmentIdAndEquipmentType(String equipmentId, Integer equipmentType);
 
 }
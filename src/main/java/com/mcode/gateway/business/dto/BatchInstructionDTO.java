@@ -0,0 +1,16 @@
+package com.mcode.gateway.business.dto;
+
+import com.mcode.gateway.mvc.NotNull;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量推送设备指令DTO
+ * 每条指令需自带serialNumber、uniqueId、instruction，qos、qosTimeout可选，不支持rpc模式
+ */
+@Data
+public class BatchInstructionDTO {
+    @NotNull
+    private List<DeliveryInstructionDTO> instructions;
+}
@@ -0,0 +1,36 @@
+package com.mcode.gateway.business.dto;
+
+import com.mcode.gateway.mvc.NotNull;
+import lombok.Data;
+
+/**
+ * 广播指令DTO
+ * 向某设备类型的在线设备推送同一条指令，可再按环境、节点过滤
+ */
+@Data
+public class BroadcastDTO {
+    /**
+     * 指令流水号，设备响应按该流水号汇总
+     */
+    @NotNull
+    private String serialNumber;
+    @NotNull
+    private String instruction;
+    /**
+     * 设备类型
+     */
+    @NotNull
+    private Integer eqType;
+    /**
+     * 设备环境，为空时不过滤
+     */
+    private Integer profile;
+    /**
+     * connector节点，为空时不过滤
+     */
+    private String node;
+    /**
+     * 消息重发窗口时间
+     */
+    private Integer qosTimeout;
+}
@@ -0,0 +1,51 @@
+package com.mcode.gateway.business.dto.adapter;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.mcode.gateway.business.dto.ConfigDTO;
+import com.mcode.gateway.mvc.DtoTypeAdapter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * {@link ConfigDTO}的预编译TypeAdapter
+ */
+@Component
+public class ConfigAdapter extends DtoTypeAdapter<ConfigDTO> {
+
+    public ConfigAdapter() {
+        super(ConfigDTO.class);
+    }
+
+    @Override
+    protected ConfigDTO create() {
+        return new ConfigDTO();
+    }
+
+    @Override
+    protected boolean readField(ConfigDTO dto, String name, JsonReader in) throws IOException {
+        switch (name) {
+            case "type":
+                dto.setType(in.nextInt());
+                return true;
+            case "descriptor":
+                dto.setDescriptor(nextString(in));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, ConfigDTO dto) throws IOException {
+        writeField(out, "type", dto.getType());
+        writeField(out, "descriptor", dto.getDescriptor());
+    }
+
+    @Override
+    public void validate(ConfigDTO dto) {
+        notNull("type", dto.getType());
+        notNull("descriptor", dto.getDescriptor());
+    }
+}
@@ -0,0 +1,75 @@
+package com.mcode.gateway.business.dto.adapter;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.mcode.gateway.business.dto.DeliveryInstructionDTO;
+import com.mcode.gateway.mvc.DtoTypeAdapter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * {@link DeliveryInstructionDTO}的预编译TypeAdapter，批量推送中的每条指令同样由其绑定
+ */
+@Component
+public class DeliveryInstructionAdapter extends DtoTypeAdapter<DeliveryInstructionDTO> {
+
+    public DeliveryInstructionAdapter() {
+        super(DeliveryInstructionDTO.class);
+    }
+
+    @Override
+    protected DeliveryInstructionDTO create() {
+        return new DeliveryInstructionDTO();
+    }
+
+    @Override
+    protected boolean readField(DeliveryInstructionDTO dto, String name, JsonReader in) throws IOException {
+        switch (name) {
+            case "serialNumber":
+                dto.setSerialNumber(nextString(in));
+                return true;
+            case "rpcModel":
+                dto.setRpcModel(nextBoolean(in));
+                return true;
+            case "rpcTimeout":
+                dto.setRpcTimeout(in.nextInt());
+                return true;
+            case "uniqueId":
+                dto.setUniqueId(nextString(in));
+                return true;
+            case "instruction":
+                dto.setInstruction(nextString(in));
+                return true;
+            case "qos":
+                dto.setQos(in.nextInt());
+                return true;
+            case "qosTimeout":
+                dto.setQosTimeout(in.nextInt());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, DeliveryInstructionDTO dto) throws IOException {
+        writeField(out, "serialNumber", dto.getSerialNumber());
+        writeField(out, "rpcModel", dto.getRpcModel());
+        writeField(out, "rpcTimeout", dto.getRpcTimeout());
+        writeField(out, "uniqueId", dto.getUniqueId());
+        writeField(out, "instruction", dto.getInstruction());
+        writeField(out, "qos", dto.getQos());
+        writeField(out, "qosTimeout", dto.getQosTimeout());
+    }
+
+    @Override
+    public void validate(DeliveryInstructionDTO dto) {
+        notNull("serialNumber", dto.getSerialNumber());
+        notNull("rpcModel", dto.getRpcModel());
+        notNull("rpcTimeout", dto.getRpcTimeout());
+        notNull("uniqueId", dto.getUniqueId());
+        notNull("instruction", dto.getInstruction());
+        notNull("qos", dto.getQos());
+    }
+}
@@ -0,0 +1,73 @@
+package com.mcode.gateway.business.dto.adapter;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.mcode.gateway.business.dto.EquipmentRegisterDTO;
+import com.mcode.gateway.mvc.DtoTypeAdapter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * {@link EquipmentRegisterDTO}的预编译TypeAdapter，包括继承自PageDTO的分页字段
+ */
+@Component
+public class EquipmentRegisterAdapter extends DtoTypeAdapter<EquipmentRegisterDTO> {
+
+    public EquipmentRegisterAdapter() {
+        super(EquipmentRegisterDTO.class);
+    }
+
+    @Override
+    protected EquipmentRegisterDTO create() {
+        return new EquipmentRegisterDTO();
+    }
+
+    @Override
+    protected boolean readField(EquipmentRegisterDTO dto, String name, JsonReader in) throws IOException {
+        switch (name) {
+            case "uniqueId":
+                dto.setUniqueId(nextString(in));
+                return true;
+            case "equipmentId":
+                dto.setEquipmentId(nextString(in));
+                return true;
+            case "equipmentType":
+                dto.setEquipmentType(in.nextInt());
+                return true;
+            case "equipmentProtocol":
+                dto.setEquipmentProtocol(in.nextInt());
+                return true;
+            case "equipmentProfile":
+                dto.setEquipmentProfile(in.nextInt());
+                return true;
+            case "pageNumber":
+                dto.setPageNumber(in.nextInt());
+                return true;
+            case "pageSize":
+                dto.setPageSize(in.nextInt());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, EquipmentRegisterDTO dto) throws IOException {
+        writeField(out, "uniqueId", dto.getUniqueId());
+        writeField(out, "equipmentId", dto.getEquipmentId());
+        writeField(out, "equipmentType", dto.getEquipmentType());
+        writeField(out, "equipmentProtocol", dto.getEquipmentProtocol());
+        writeField(out, "equipmentProfile", dto.getEquipmentProfile());
+        writeField(out, "pageNumber", dto.getPageNumber());
+        writeField(out, "pageSize", dto.getPageSize());
+    }
+
+    @Override
+    public void validate(EquipmentRegisterDTO dto) {
+        notNull("equipmentId", dto.getEquipmentId());
+        notNull("equipmentType", dto.getEquipmentType());
+        notNull("equipmentProtocol", dto.getEquipmentProtocol());
+        notNull("equipmentProfile", dto.getEquipmentProfile());
+    }
+}
@@ -0,0 +1,44 @@
+package com.mcode.gateway.business.dto.adapter;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.mcode.gateway.business.dto.MonitorDTO;
+import com.mcode.gateway.mvc.DtoTypeAdapter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * {@link MonitorDTO}的预编译TypeAdapter
+ */
+@Component
+public class MonitorAdapter extends DtoTypeAdapter<MonitorDTO> {
+
+    public MonitorAdapter() {
+        super(MonitorDTO.class);
+    }
+
+    @Override
+    protected MonitorDTO create() {
+        return new MonitorDTO();
+    }
+
+    @Override
+    protected boolean readField(MonitorDTO dto, String name, JsonReader in) throws IOException {
+        if ("eqType".equals(name)) {
+            dto.setEqType(nextString(in));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, MonitorDTO dto) throws IOException {
+        writeField(out, "eqType", dto.getEqType());
+    }
+
+    @Override
+    public void validate(MonitorDTO dto) {
+        //无必填字段
+    }
+}
@@ -1,16 +1,36 @@
 package com.mcode.gateway.business.service;
 
+import com.mcode.gateway.business.dto.BroadcastDTO;
 import com.mcode.gateway.business.dto.DeliveryInstructionDTO;
 import com.mcode.gateway.business.service.impl.DeviceInstructionServiceImpl;
 
 import java.lang.management.ThreadInfo;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface DeviceInstructionService {
     /**
-     * 发送指令
+     * 发送指令，rpc模式下设备响应或超时后完成
      */
-    String publishInstruction(DeliveryInstructionDTO deliveryInstructionDTO);
+    CompletableFuture<String> publishInstruction(DeliveryInstructionDTO deliveryInstructionDTO);
+
+    /**
+     * 批量发送指令，会话一次查询，按设备队列及节点分组发送，在指令工作线程中执行
+     *
+     * @return 每条指令的处理结果，与入参按下标对应
+     */
+    CompletableFuture<List<DeviceInstructionServiceImpl.BatchResponse>> publishInstructions(List<DeliveryInstructionDTO> instructions);
+
+    /**
+     * 广播指令，每个connector节点发送一条消息，由connector在本地分发给目标设备，在指令工作线程中执行
+     */
+    CompletableFuture<DeviceInstructionServiceImpl.BroadcastResponse> broadcast(BroadcastDTO broadcastDTO);
+
+    /**
+     * 广播指令的设备响应进度
+     */
+    Map<String, Object> broadcastStatus(String serialNumber);
 
     /**
      * 监控所有设备、所有节点的实时设备连接总数
@@ -18,9 +38,9 @@ public interface DeviceInstructionService {
     List<DeviceInstructionServiceImpl.Response> monitor(Integer eqType);
 
     /**
-     * dump某节点线程
+     * dump某节点线程，节点响应或超时后完成
      */
-    String dump(String nodeName, Integer eqType);
+    CompletableFuture<String> dump(String nodeName, Integer eqType);
 
     /**
      * dump本地线程
@@ -1,21 +1,30 @@
 package com.mcode.gateway.business.service.impl;
 
 import com.google.gson.Gson;
+import com.mcode.gateway.Bootstrap;
 import com.mcode.gateway.business.dal.EquipmentDAL;
 import com.mcode.gateway.business.dal.dao.EquipmentRegistry;
+import com.mcode.gateway.business.dto.BroadcastDTO;
 import com.mcode.gateway.business.dto.DeliveryInstructionDTO;
 import com.mcode.gateway.business.service.DeviceInstructionService;
 import com.mcode.gateway.configuration.CommonConfig;
 import com.mcode.gateway.configuration.ConfigCenter;
+import com.mcode.gateway.dispatch.BroadcastTracker;
+import com.mcode.gateway.dispatch.event.PipelineContainer;
 import com.mcode.gateway.dispatch.event.handler.EquipmentLogin;
 import com.mcode.gateway.dispatch.event.handler.MonitorData;
 import com.mcode.gateway.dispatch.event.handler.ReceiveResponseAsync;
+import com.mcode.gateway.dispatch.event.handler.ReceiveResponseSync;
+import com.mcode.gateway.exception.MVCException;
+import com.mcode.gateway.exception.NullParamException;
 import com.mcode.gateway.rpc.MqConnector;
 import com.mcode.gateway.rpc.NodeEntry;
 import com.mcode.gateway.rpc.PublishEvent;
 import com.mcode.gateway.rpc.SessionEntry;
+import com.mcode.gateway.rpc.serialization.EventEncoder;
 import com.mcode.gateway.rpc.serialization.Trans;
 import com.mcode.gateway.type.EventTypeEnum;
+import com.mcode.gateway.type.PublishStatus;
 import com.mcode.gateway.type.QosType;
 import com.mcode.gateway.util.CommonUtil;
 import com.mcode.gateway.util.IdGenerator;
@@ -26,6 +35,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 
 import javax.annotation.Resource;
 import java.lang.management.ManagementFactory;
@@ -34,13 +45,23 @@ import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -50,10 +71,12 @@ import java.util.stream.Collectors;
  */
 @Service
 @Slf4j
-public class DeviceInstructionServiceImpl extends CommonUtil implements DeviceInstructionService {
+public class DeviceInstructionServiceImpl extends CommonUtil implements DeviceInstructionService, Bootstrap {
     @Resource
     private EquipmentDAL equipmentDAL;
     @Resource
+    private PipelineContainer pipelineContainer;
+    @Resource
     private JedisPool jedisPool;
     @Resource
     private Gson gson;
@@ -64,13 +87,24 @@ public class DeviceInstructionServiceImpl extends CommonUtil implements DeviceIn
     @Resource
     private ReceiveResponseAsync responseAsync;
     @Resource
+    private ReceiveResponseSync responseSync;
+    @Resource
     private ConfigCenter configCenter;
     @Resource
     private MonitorData monitorData;
+    @Resource
+    private BroadcastTracker broadcastTracker;
+    /**
+     * 批量推送、广播的工作线程，redis/db查询不占用http的event loop
+     */
+    private ThreadPoolExecutor instructionExecutor;
     private int nodes = 0;
+    private static final int BROADCAST_TARGETS_PER_MESSAGE = 1000;
+    private static final int SESSION_SCAN_COUNT = 1000;
+    private static final long DUMP_TIMEOUT = 5000;
 
     @Override
-    public String publishInstruction(DeliveryInstructionDTO deliveryInstructionDTO) {
+    public CompletableFuture<String> publishInstruction(DeliveryInstructionDTO deliveryInstructionDTO) {
         String device;
         String md5UniqueId = deliveryInstructionDTO.getUniqueId();
         try (Jedis jedis = jedisPool.getResource()) {
@@ -115,14 +149,16 @@ public class DeviceInstructionServiceImpl extends CommonUtil implements DeviceIn
             //是否使用rpc模式，rpc模式下也支持qos1
             if (rpcModel) {
                 log.info("rpc模式向【{}】发送消息【{}】,qos【{}】", eqId, instruction, qos);
-                Trans.event_data eventEntry = mqConnector.publishSync(publishEvent, rpcTimeout);
-                if (qos == QosType.AT_LEAST_ONCE.getType() && eventEntry == null) {
-                    publishEvent.setUniqueId(md5UniqueId);
-                    responseAsync.qos1Publish(serialNumber, publishEvent);
-                } else {
-
-                }
-                return Optional.ofNullable(eventEntry).map(Trans.event_data::getMsg).orElse(StringUtils.EMPTY);
+                //不阻塞调用线程，设备响应或超时时在事件通道线程/超时线程中完成
+                return mqConnector.publishRpc(publishEvent, rpcTimeout).thenApply(eventEntry -> {
+                    //超时后的响应交还给默认pipeline，由qos1流程确认
+                    pipelineContainer.removeRpcHandler(serialNumber);
+                    if (qos == QosType.AT_LEAST_ONCE.getType() && eventEntry == null) {
+                        publishEvent.setUniqueId(md5UniqueId);
+                        responseAsync.qos1Publish(serialNumber, publishEvent);
+                    }
+                    return Optional.ofNullable(eventEntry).map(Trans.event_data::getMsg).orElse(StringUtils.EMPTY);
+                });
             } else {
                 //qos1处理
                 if (qos == QosType.AT_LEAST_ONCE.getType()) {
@@ -134,11 +170,252 @@ public class DeviceInstructionServiceImpl extends CommonUtil implements DeviceIn
                     mqConnector.publishAsync(publishEvent);
                 }
 
-                return StringUtils.EMPTY;
+                return CompletableFuture.completedFuture(StringUtils.EMPTY);
             }
         }
     }
 
+    @Override
+    public void init() {
+        int threads = Math.max(1, commonConfig.getInstructionThreads());
+        AtomicInteger count = new AtomicInteger();
+        instructionExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(commonConfig.getInstructionQueueSize()), r -> {
+            Thread thread = new Thread(r);
+            thread.setName("instruction-exec-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交到指令工作线程执行，队列满时拒绝请求
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, instructionExecutor);
+        } catch (RejectedExecutionException e) {
+            log.warn("指令工作线程繁忙，拒绝请求");
+            throw new MVCException("指令推送繁忙，请稍后重试");
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<BatchResponse>> publishInstructions(List<DeliveryInstructionDTO> instructions) {
+        if (instructions.size() > commonConfig.getMaxBatchInstructions()) {
+            throw new MVCException(String.format("单次最多推送%s条指令", commonConfig.getMaxBatchInstructions()));
+        }
+        return submit(() -> doPublishInstructions(instructions));
+    }
+
+    private List<BatchResponse> doPublishInstructions(List<DeliveryInstructionDTO> instructions) {
+        List<BatchResponse> results = new ArrayList<>(instructions.size());
+        //参数有效的指令下标
+        List<Integer> valid = new ArrayList<>(instructions.size());
+        for (int i = 0; i < instructions.size(); i++) {
+            DeliveryInstructionDTO instruction = instructions.get(i);
+            BatchResponse result = new BatchResponse();
+            results.add(result);
+            try {
+                validEmpty("指令", instruction);
+                result.setSerialNumber(instruction.getSerialNumber());
+                result.setUniqueId(instruction.getUniqueId());
+                validEmpty("serialNumber", instruction.getSerialNumber());
+                validEmpty("uniqueId", instruction.getUniqueId());
+                validEmpty("instruction", instruction.getInstruction());
+            } catch (NullParamException e) {
+                result.status(PublishStatus.INVALID, e.getMessage());
+                continue;
+            }
+            valid.add(i);
+        }
+        if (valid.isEmpty()) {
+            return results;
+        }
+        //一次HMGET取回所有设备会话
+        String[] uniqueIds = new String[valid.size()];
+        for (int k = 0; k < uniqueIds.length; k++) {
+            uniqueIds[k] = instructions.get(valid.get(k)).getUniqueId();
+        }
+        List<String> devices;
+        try (Jedis jedis = jedisPool.getResource()) {
+            devices = jedis.hmget(EquipmentLogin.SESSION_MAP, uniqueIds);
+        }
+        //按(queue,node)分组，同组的消息连续投递到同一publisher线程，开启批量发送时合并为event_batch
+        Map<String, Map<String, List<Integer>>> groups = new LinkedHashMap<>();
+        SessionEntry[] sessions = new SessionEntry[instructions.size()];
+        Set<String> absent = new HashSet<>();
+        for (int k = 0; k < uniqueIds.length; k++) {
+            String device = devices.get(k);
+            int index = valid.get(k);
+            if (StringUtils.isEmpty(device)) {
+                absent.add(uniqueIds[k]);
+                continue;
+            }
+            SessionEntry sessionEntry = gson.fromJson(device, SessionEntry.class);
+            sessions[index] = sessionEntry;
+            groups.computeIfAbsent(mqConnector.getQueue(sessionEntry.getEqType()), q -> new LinkedHashMap<>()).
+                    computeIfAbsent(sessionEntry.getNode(), n -> new ArrayList<>()).
+                    add(index);
+        }
+        if (!absent.isEmpty()) {
+            //不在线的设备一次查询区分未注册与离线
+            Set<String> registered = equipmentDAL.getByUniqueIdIn(absent).stream().
+                    map(EquipmentRegistry::getUniqueId).
+                    collect(Collectors.toSet());
+            for (int k = 0; k < uniqueIds.length; k++) {
+                if (sessions[valid.get(k)] == null) {
+                    PublishStatus status = registered.contains(uniqueIds[k]) ? PublishStatus.OFFLINE : PublishStatus.UNREGISTERED;
+                    results.get(valid.get(k)).status(status, status.getDesc());
+                }
+            }
+        }
+        groups.forEach((queue, nodes) -> nodes.forEach((node, indexes) -> {
+            for (int index : indexes) {
+                BatchResponse result = results.get(index);
+                try {
+                    publishBatchItem(instructions.get(index), sessions[index], queue);
+                    result.status(PublishStatus.SENT, PublishStatus.SENT.getDesc());
+                } catch (Exception e) {
+                    //单条指令的任何异常都只影响该条的结果
+                    log.warn("批量推送指令{}失败：{}", result.getSerialNumber(), e.toString());
+                    result.status(PublishStatus.REJECTED, Optional.ofNullable(e.getMessage()).orElse(e.toString()));
+                }
+            }
+        }));
+        log.info("批量推送{}条指令，有效{}条，涉及{}个设备队列", instructions.size(), valid.size(), groups.size());
+        return results;
+    }
+
+    /**
+     * 推送批量指令中的一条，qos1的指令进入重发流程
+     */
+    private void publishBatchItem(DeliveryInstructionDTO instruction, SessionEntry sessionEntry, String queue) {
+        String serialNumber = instruction.getSerialNumber();
+        int qos = instruction.getQos() == null ? QosType.AT_MOST_ONCE.getType() : instruction.getQos();
+        int qosTimeout = instruction.getQosTimeout() == null ? commonConfig.getDefaultTimeout() : instruction.getQosTimeout();
+        byte[] bytes = EventEncoder.encode(EventEncoder.builder().
+                setEqId(sessionEntry.getEqId()).
+                setType(EventTypeEnum.SERVER_PUBLISH.getType()).
+                setMsg(instruction.getInstruction()).
+                setSerialNumber(serialNumber).
+                setDispatcherId(commonConfig.getDispatcherId()).
+                setTimeStamp(System.currentTimeMillis()).
+                setQos(qos).
+                setReTryTimeout(qosTimeout));
+        if (qos == QosType.AT_LEAST_ONCE.getType()) {
+            //qos1的消息由重发流程持有，不使用对象池
+            PublishEvent publishEvent = new PublishEvent(queue, bytes, serialNumber);
+            publishEvent.setQos(qos);
+            publishEvent.setTimeout(qosTimeout);
+            publishEvent.addHeaders(MqConnector.CONNECTOR_ID, sessionEntry.getNode());
+            publishEvent.setUniqueId(instruction.getUniqueId());
+            responseAsync.qos1Publish(serialNumber, publishEvent);
+        } else {
+            PublishEvent publishEvent = PublishEvent.newInstance(queue, bytes, serialNumber);
+            publishEvent.setQos(qos);
+            publishEvent.setTimeout(qosTimeout);
+            publishEvent.addHeaders(MqConnector.CONNECTOR_ID, sessionEntry.getNode());
+            mqConnector.publishAsync(publishEvent);
+        }
+    }
+
+    @Override
+    public CompletableFuture<BroadcastResponse> broadcast(BroadcastDTO broadcastDTO) {
+        //HSCAN遍历全部会话耗时与在线设备数成正比，在指令工作线程中执行
+        return submit(() -> doBroadcast(broadcastDTO));
+    }
+
+    private BroadcastResponse doBroadcast(BroadcastDTO broadcastDTO) {
+        String serialNumber = broadcastDTO.getSerialNumber();
+        String queue = mqConnector.getQueue(broadcastDTO.getEqType());
+        //流水号与未完成的qos1指令重复时，设备响应会被当作广播响应汇总，qos1指令无法确认
+        if (responseAsync.isPending(serialNumber)) {
+            throw new RuntimeException("流水号" + serialNumber + "与未确认的指令重复");
+        }
+        Map<String, Set<String>> targets = scanSessions(broadcastDTO);
+        if (targets.isEmpty()) {
+            throw new RuntimeException("没有符合条件的在线设备");
+        }
+        //不按环境过滤时节点上该类型的设备全部是目标，只需广播标记，无需携带设备列表
+        boolean broadcast = broadcastDTO.getProfile() == null;
+        if (!broadcastTracker.track(serialNumber, targets)) {
+            throw new RuntimeException("流水号" + serialNumber + "的广播已存在");
+        }
+        int qosTimeout = broadcastDTO.getQosTimeout() == null ? commonConfig.getDefaultTimeout() : broadcastDTO.getQosTimeout();
+        byte[] bytes = EventEncoder.encode(EventEncoder.builder().
+                setType(EventTypeEnum.SERVER_PUBLISH.getType()).
+                setMsg(broadcastDTO.getInstruction()).
+                setSerialNumber(serialNumber).
+                setDispatcherId(commonConfig.getDispatcherId()).
+                setTimeStamp(System.currentTimeMillis()).
+                setQos(QosType.AT_MOST_ONCE.getType()).
+                setReTryTimeout(qosTimeout));
+        int messages = 0;
+        for (Map.Entry<String, Set<String>> entry : targets.entrySet()) {
+            String node = entry.getKey();
+            if (broadcast) {
+                publishBroadcast(queue, bytes, serialNumber, node, MqConnector.BROADCAST, Boolean.TRUE.toString());
+                messages++;
+                continue;
+            }
+            //目标列表放在消息头中，按条数拆分，避免超过broker的帧大小
+            List<String> eqIds = new ArrayList<>(entry.getValue());
+            for (int i = 0; i < eqIds.size(); i += BROADCAST_TARGETS_PER_MESSAGE) {
+                List<String> chunk = eqIds.subList(i, Math.min(i + BROADCAST_TARGETS_PER_MESSAGE, eqIds.size()));
+                publishBroadcast(queue, bytes, serialNumber, node, MqConnector.TARGETS, String.join(",", chunk));
+                messages++;
+            }
+        }
+        BroadcastResponse response = new BroadcastResponse();
+        response.setSerialNumber(serialNumber);
+        response.setNodes(targets.size());
+        response.setDevices(targets.values().stream().mapToInt(Set::size).sum());
+        response.setMessages(messages);
+        log.info("广播指令{}，{}个节点，{}台设备，{}条消息", serialNumber, response.getNodes(), response.getDevices(), messages);
+        return response;
+    }
+
+    @Override
+    public Map<String, Object> broadcastStatus(String serialNumber) {
+        return Optional.ofNullable(broadcastTracker.status(serialNumber)).
+                orElseThrow(() -> new RuntimeException("广播记录不存在或已过期"));
+    }
+
+    private void publishBroadcast(String queue, byte[] bytes, String serialNumber, String node, String header, String value) {
+        PublishEvent publishEvent = PublishEvent.newInstance(queue, bytes, serialNumber);
+        publishEvent.addHeaders(MqConnector.CONNECTOR_ID, node);
+        publishEvent.addHeaders(header, value);
+        mqConnector.publishAsync(publishEvent);
+    }
+
+    /**
+     * 以HSCAN遍历设备会话，按节点归集符合条件的设备
+     *
+     * @return 节点 - 目标设备eqId
+     */
+    private Map<String, Set<String>> scanSessions(BroadcastDTO broadcastDTO) {
+        Map<String, Set<String>> targets = new LinkedHashMap<>();
+        ScanParams params = new ScanParams().count(SESSION_SCAN_COUNT);
+        try (Jedis jedis = jedisPool.getResource()) {
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<Map.Entry<String, String>> result = jedis.hscan(EquipmentLogin.SESSION_MAP, cursor, params);
+                for (Map.Entry<String, String> device : result.getResult()) {
+                    SessionEntry sessionEntry = gson.fromJson(device.getValue(), SessionEntry.class);
+                    if (broadcastDTO.getEqType().equals(sessionEntry.getEqType()) &&
+                            (broadcastDTO.getProfile() == null || broadcastDTO.getProfile().equals(sessionEntry.getProfile())) &&
+                            (StringUtils.isEmpty(broadcastDTO.getNode()) || broadcastDTO.getNode().equals(sessionEntry.getNode()))) {
+                        //HSCAN可能返回重复的元素
+                        targets.computeIfAbsent(sessionEntry.getNode(), n -> new LinkedHashSet<>()).add(sessionEntry.getEqId());
+                    }
+                }
+                cursor = result.getStringCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        }
+        return targets;
+    }
+
     @Override
     public List<Response> monitor(Integer eqType) {
         //设备队列名- 设备节点ID
@@ -206,7 +483,7 @@ public class DeviceInstructionServiceImpl extends CommonUtil implements DeviceIn
     }
 
     @Override
-    public String dump(String nodeName, Integer eqType) {
+    public CompletableFuture<String> dump(String nodeName, Integer eqType) {
         Trans.event_data.Builder entry = Trans.event_data.newBuilder();
         String id = String.valueOf(IdGenerator.buildDistributedId());
         byte[] bytes = entry.
@@ -217,8 +494,14 @@ public class DeviceInstructionServiceImpl extends CommonUtil implements DeviceIn
                 build().toByteArray();
         PublishEvent event = new PublishEvent(mqConnector.getQueue(eqType), bytes, id);
         event.addHeaders(MqConnector.CONNECTOR_ID, nodeName);
-        Trans.event_data data = mqConnector.publishSync(event, 5);
-        return data.getMsg();
+        //节点的响应只交给本次调用，不经过默认pipeline
+        pipelineContainer.registerRpcHandler(id, responseSync);
+        return mqConnector.publishRpc(event, DUMP_TIMEOUT).thenApply(data -> {
+            pipelineContainer.removeRpcHandler(id);
+            return Optional.ofNullable(data).
+                    map(Trans.event_data::getMsg).
+                    orElseThrow(() -> new RuntimeException(nodeName + "节点未在" + DUMP_TIMEOUT + "ms内响应"));
+        });
     }
 
     @Override
@@ -233,6 +516,30 @@ public class DeviceInstructionServiceImpl extends CommonUtil implements DeviceIn
         private String info;
     }
 
+    @Data
+    public static class BroadcastResponse {
+        private String serialNumber;
+        private int nodes;
+        private int devices;
+        private int messages;
+    }
+
+    /**
+     * 批量推送中单条指令的结果，与请求中的指令按下标一一对应
+     */
+    @Data
+    public static class BatchResponse {
+        private String uniqueId;
+        private String serialNumber;
+        private PublishStatus status;
+        private String tip;
+
+        private void status(PublishStatus status, String tip) {
+            this.status = status;
+            this.tip = tip;
+        }
+    }
+
     private List<String> selectNode(String type) {
         try (Jedis jedis = jedisPool.getResource()) {
             return jedis.keys(type + "_*").
@@ -23,6 +23,10 @@ public class CommonConfig {
      * HTTP端口
      */
     private int httpPort;
+    /**
+     * HttpDownStream实例数，每个实例占用一个event loop，默认为cpu核数
+     */
+    private int httpInstances;
     /**
      * 域名
      */
@@ -31,6 +35,38 @@ public class CommonConfig {
      * mq事件队列容量
      */
     private int mqEventQueueSize;
+    /**
+     * 数据事件处理通道数，事件按设备分区，默认为cpu核数
+     */
+    private int eventLoopLanes;
+    /**
+     * 事件队列高水位，占容量的比例，超过后暂停对应的mq消费者
+     */
+    private double eventQueueHighWatermark = 0.8;
+    /**
+     * 事件队列低水位，占容量的比例，回落后恢复mq消费者
+     */
+    private double eventQueueLowWatermark = 0.3;
+    /**
+     * 事件循环单次最多取出的事件数
+     */
+    private int eventBurstSize = 256;
+    /**
+     * 阻塞事件处理线程数，默认为cpu核数*2
+     */
+    private int blockingThreads;
+    /**
+     * 每条阻塞事件处理线程的任务队列容量
+     */
+    private int blockingQueueSize = 1000;
+    /**
+     * 控制事件（心跳、注册、登录）的阻塞处理线程数，与数据上报的阻塞线程分开
+     */
+    private int controlBlockingThreads = 2;
+    /**
+     * 控制事件队列容量
+     */
+    private int controlEventQueueSize = 1000;
     /**
      * 同步调用最大阻塞时间
      */
@@ -39,4 +75,40 @@ public class CommonConfig {
      * 默认消息重发窗口时间
      */
     private Integer defaultTimeout;
+    /**
+     * 是否压缩mq及eventBus中超过阈值的消息体
+     */
+    private boolean compressionEnabled;
+    /**
+     * 压缩阈值，byte
+     */
+    private int compressionThreshold = 1024;
+    /**
+     * deflate压缩级别，1~9，越大压缩率越高cpu开销越大
+     */
+    private int compressionLevel = 1;
+    /**
+     * 解压后消息体的上限，byte，超过时视为异常消息丢弃，防止压缩炸弹耗尽堆内存
+     */
+    private int maxDecompressedSize = 16 * 1024 * 1024;
+    /**
+     * 慢事件阈值，ms，单批事件处理超过该时间时打印处理线程的调用栈，0为关闭
+     */
+    private long slowEventThreshold = 200;
+    /**
+     * 批量推送接口单次最多的指令数
+     */
+    private int maxBatchInstructions = 5000;
+    /**
+     * 批量推送、广播等需查询redis/db的指令接口的工作线程数，不在http的event loop上执行
+     */
+    private int instructionThreads = 4;
+    /**
+     * 指令工作线程的任务队列容量，队列满时拒绝请求
+     */
+    private int instructionQueueSize = 100;
+    /**
+     * 广播指令响应汇总的保留时间，ms
+     */
+    private long broadcastRetention = 10 * 60 * 1000;
 }
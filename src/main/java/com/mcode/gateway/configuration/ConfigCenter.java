@@ -5,6 +5,7 @@ import com.mcode.gateway.LoadOrder;
 import com.mcode.gateway.business.dal.ConfigurationDAL;
 import com.mcode.gateway.business.dal.dao.Configuration;
 import com.mcode.gateway.business.dto.ConfigDTO;
+import com.mcode.gateway.rpc.MqConnector;
 import com.mcode.gateway.type.ConfigTypeEnum;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -28,6 +29,8 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ConfigCenter implements Bootstrap {
     @Resource
     private ConfigurationDAL configurationDAL;
+    @Resource
+    private MqConnector mqConnector;
     @Getter
     private Map<Integer, String> equipmentTypeRegistry;
     @Getter
@@ -49,6 +52,7 @@ public class ConfigCenter implements Bootstrap {
         equipmentTypeRegistry.putIfAbsent(type, configDTO.getDescriptor());
         Configuration equipmentType = getConfiguration(configDTO, ConfigTypeEnum.EQUIPMENT_TYPE.getType());
         configurationDAL.save(equipmentType);
+        mqConnector.declareEquipmentQueue(type);
     }
 
     /**
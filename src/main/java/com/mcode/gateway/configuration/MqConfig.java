@@ -1,9 +1,13 @@
 package com.mcode.gateway.configuration;
 
+import com.mcode.gateway.type.OverflowPolicy;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * mq相关配置
  */
@@ -19,6 +23,14 @@ public class MqConfig {
      * 端口
      */
     private int mqPort;
+    /**
+     * broker地址列表，host:port，为空时使用mqHost:mqPort
+     */
+    private List<String> mqHosts = new ArrayList<>();
+    /**
+     * 连接数，至少为2，半数（向上取整）为消费者连接，其余为生产者连接，两者不共用连接
+     */
+    private int connectionCount = 1;
     /**
      * 用户名
      */
@@ -35,9 +47,61 @@ public class MqConfig {
      * 上行队列名
      */
     private String upQueueName;
+    /**
+     * 上行控制队列名，connector的心跳、注册、登录消息发往该队列，为空时不启用
+     */
+    private String controlQueueName;
+    /**
+     * 上行控制队列消费者数量
+     */
+    private int controlConsumerCount = 1;
+    /**
+     * 上行队列消费者数量，每个消费者独占一个channel
+     */
+    private int consumerCount = 2;
+    /**
+     * 每个消费者最多持有的未ack消息数
+     */
+    private int prefetchCount = 256;
+    /**
+     * 批量ack条数，不超过prefetchCount的一半
+     */
+    private int ackBatchSize = 64;
     /**
      * 交换机名
      */
     private String exchangeName;
+    /**
+     * 是否开启publisher confirm，开启后broker异步回执ack/nack，nack的qos1消息立即重发
+     */
+    private boolean publisherConfirm;
+    /**
+     * publisher线程数，同一(queue,connector)的消息由同一线程发送，默认为cpu核数
+     */
+    private int publisherThreads;
+    /**
+     * 每条publisher线程的发送队列容量
+     */
+    private int publishQueueSize = 1024;
+    /**
+     * 发送队列已满时的处理策略：BLOCK/FAIL_FAST/SPILL，BLOCK只在允许阻塞的线程上等待，见{@link com.mcode.gateway.rpc.NonBlockingThreads}
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    /**
+     * BLOCK策略下的最长阻塞时间，ms
+     */
+    private long publishBlockTimeout = 100;
+    /**
+     * 是否开启批量发送，同一(queue,connector)的消息合并为一条event_batch消息
+     */
+    private boolean batchEnabled;
+    /**
+     * 单个批次的最大消息数
+     */
+    private int batchMaxSize = 64;
+    /**
+     * 批次最长等待时间，ms
+     */
+    private long batchLingerMs = 5;
 
 }
@@ -0,0 +1,149 @@
+package com.mcode.gateway.dispatch;
+
+import com.mcode.gateway.Bootstrap;
+import com.mcode.gateway.LoadOrder;
+import com.mcode.gateway.configuration.CommonConfig;
+import com.mcode.gateway.dispatch.event.Blocking;
+import com.mcode.gateway.rpc.serialization.EventFrame;
+import com.mcode.gateway.rpc.serialization.Trans;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 阻塞事件处理器的执行线程池
+ * 由多条单线程执行器组成，事件按分区键固定分配到同一执行器，保证同一设备的事件按序处理
+ * 每个执行器的任务队列有界，队列满时提交任务的事件通道线程阻塞等待，以此向上游施加背压，既不丢弃事件也不打乱顺序
+ * 控制通道的事件使用独立的一组执行器，数据上报积压时控制通道不会阻塞在数据执行器上
+ */
+@Slf4j
+@Component
+@LoadOrder(value = 2)
+public class BlockingExecutor implements Bootstrap {
+    @Resource
+    private CommonConfig commonConfig;
+    @Resource
+    private EventMetrics eventMetrics;
+    private ThreadPoolExecutor[] stripes;
+    private ThreadPoolExecutor[] controlStripes;
+    private final Map<Class<?>, Boolean> blockingHandlers = new ConcurrentHashMap<>();
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder blockedCount = new LongAdder();
+
+    @Override
+    public void init() {
+        int threads = commonConfig.getBlockingThreads() > 0 ?
+                commonConfig.getBlockingThreads() : Runtime.getRuntime().availableProcessors() * 2;
+        stripes = newStripes("blocking-exec-", threads);
+        controlStripes = newStripes("blocking-control-", Math.max(1, commonConfig.getControlBlockingThreads()));
+        log.info("启动{}条阻塞任务线程，{}条控制事件阻塞任务线程", threads, controlStripes.length);
+    }
+
+    private ThreadPoolExecutor[] newStripes(String prefix, int threads) {
+        ThreadPoolExecutor[] executors = new ThreadPoolExecutor[threads];
+        for (int i = 0; i < threads; i++) {
+            String name = prefix + (i + 1);
+            executors[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(commonConfig.getBlockingQueueSize()), r -> {
+                Thread thread = new Thread(r);
+                thread.setName(name);
+                return thread;
+            }, this::awaitQueue);
+        }
+        return executors;
+    }
+
+    /**
+     * 任务队列已满时阻塞提交线程直到队列有空位
+     */
+    private void awaitQueue(Runnable task, ThreadPoolExecutor executor) {
+        blockedCount.increment();
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            log.warn("等待阻塞任务队列时被中断，直接执行");
+            task.run();
+        }
+    }
+
+    /**
+     * 事件处理器是否被标记为{@link Blocking}，结果按类缓存
+     */
+    public boolean isBlocking(Consumer<Trans.event_data> handler) {
+        return blockingHandlers.computeIfAbsent(handler.getClass(), c ->
+                AnnotationUtils.findAnnotation(ClassUtils.getUserClass(c), Blocking.class) != null);
+    }
+
+    /**
+     * 按分区键提交阻塞事件处理任务
+     * 同一执行器上的事件合并为一个批量任务，同一分区键的事件始终落在同一执行器且保持原有顺序
+     * 事件在执行器线程中才完整解析，不占用事件通道线程
+     *
+     * @param control 是否来自控制通道，控制事件只提交到控制事件执行器
+     */
+    public void execute(Consumer<Trans.event_data> handler, List<EventFrame> frames, boolean control) {
+        ThreadPoolExecutor[] stripes = control ? controlStripes : this.stripes;
+        Map<Integer, List<EventFrame>> stripeFrames = new LinkedHashMap<>();
+        for (EventFrame frame : frames) {
+            int stripe = (frame.partitionKey().hashCode() & Integer.MAX_VALUE) % stripes.length;
+            stripeFrames.computeIfAbsent(stripe, s -> new ArrayList<>()).add(frame);
+        }
+        stripeFrames.forEach((stripe, batch) -> {
+            submittedCount.add(batch.size());
+            stripes[stripe].execute(() -> {
+                //按条计数：无法解析的事件及处理器报告的失败事件计为失败，整批异常时整批计为失败
+                int[] failed = new int[1];
+                try {
+                    eventMetrics.execute(batch.get(0).getType(), batch.size(), () -> {
+                        List<Trans.event_data> events = MqEventUpStream.decode(batch);
+                        failed[0] = batch.size() - events.size() + MqEventUpStream.acceptBatch(handler, events);
+                    });
+                } catch (Exception e) {
+                    failed[0] = batch.size();
+                    log.warn("阻塞事件处理异常，{}", e);
+                }
+                failedCount.add(failed[0]);
+                completedCount.add(batch.size() - failed[0]);
+            });
+        });
+    }
+
+    /**
+     * 待执行任务数及完成、异常计数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", stripes.length);
+        stats.put("pending", pending(stripes));
+        stats.put("controlThreads", controlStripes.length);
+        stats.put("controlPending", pending(controlStripes));
+        stats.put("submitted", submittedCount.sum());
+        stats.put("completed", completedCount.sum());
+        stats.put("failed", failedCount.sum());
+        stats.put("blocked", blockedCount.sum());
+        return stats;
+    }
+
+    private static int pending(ThreadPoolExecutor[] executors) {
+        int pending = 0;
+        for (ThreadPoolExecutor executor : executors) {
+            pending += executor.getQueue().size();
+        }
+        return pending;
+    }
+}
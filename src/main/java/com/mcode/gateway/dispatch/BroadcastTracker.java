@@ -0,0 +1,117 @@
+package com.mcode.gateway.dispatch;
+
+import com.mcode.gateway.Bootstrap;
+import com.mcode.gateway.configuration.CommonConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 广播指令的设备响应汇总
+ * 广播指令每个connector节点只发一条消息，由connector在本地分发给设备，设备仍逐个以CLIENT_RESPONSE响应，
+ * 响应按流水号汇总到这里，超过保留时间的广播记录定时清理
+ */
+@Slf4j
+@Component
+public class BroadcastTracker implements Bootstrap {
+    @Resource
+    private CommonConfig commonConfig;
+    private final Map<String, Broadcast> broadcasts = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService expireThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("broadcast-expire-1");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public void init() {
+        long interval = Math.max(1000, commonConfig.getBroadcastRetention() / 10);
+        expireThread.scheduleWithFixedDelay(this::expire, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登记一次广播，流水号已在广播中时不覆盖原记录
+     *
+     * @param targets 各节点的目标设备eqId
+     * @return 流水号重复时返回false
+     */
+    public boolean track(String serialNumber, Map<String, Set<String>> targets) {
+        return broadcasts.putIfAbsent(serialNumber, new Broadcast(targets)) == null;
+    }
+
+    /**
+     * 记录设备响应，只统计广播目标内的设备
+     *
+     * @return 该流水号是否为广播指令，是则响应已被汇总
+     */
+    public boolean acknowledge(String serialNumber, String eqId) {
+        Broadcast broadcast = broadcasts.get(serialNumber);
+        if (broadcast == null) {
+            return false;
+        }
+        if (broadcast.targets.contains(eqId)) {
+            broadcast.acked.add(eqId);
+        } else {
+            log.warn("广播{}收到非目标设备{}的响应，忽略", serialNumber, eqId);
+        }
+        return true;
+    }
+
+    /**
+     * 广播的响应进度，记录不存在或已过期时返回null
+     */
+    public Map<String, Object> status(String serialNumber) {
+        Broadcast broadcast = broadcasts.get(serialNumber);
+        if (broadcast == null) {
+            return null;
+        }
+        int expected = broadcast.targets.size();
+        int acked = broadcast.acked.size();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("serialNumber", serialNumber);
+        status.put("nodes", broadcast.expected);
+        status.put("expected", expected);
+        status.put("acked", acked);
+        status.put("complete", acked >= expected);
+        status.put("elapsedMillis", System.currentTimeMillis() - broadcast.createTime);
+        return status;
+    }
+
+    private void expire() {
+        long deadline = System.currentTimeMillis() - commonConfig.getBroadcastRetention();
+        broadcasts.entrySet().removeIf(entry -> {
+            if (entry.getValue().createTime < deadline) {
+                log.info("广播{}记录过期，响应{}条", entry.getKey(), entry.getValue().acked.size());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static class Broadcast {
+        /**
+         * 节点 - 预期响应的设备数
+         */
+        private final Map<String, Integer> expected = new LinkedHashMap<>();
+        private final Set<String> targets = new HashSet<>();
+        private final Set<String> acked = ConcurrentHashMap.newKeySet();
+        private final long createTime = System.currentTimeMillis();
+
+        private Broadcast(Map<String, Set<String>> targets) {
+            targets.forEach((node, eqIds) -> {
+                expected.put(node, eqIds.size());
+                this.targets.addAll(eqIds);
+            });
+        }
+    }
+}
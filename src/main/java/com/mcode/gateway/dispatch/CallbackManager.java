@@ -1,20 +1,36 @@
 package com.mcode.gateway.dispatch;
 
+import com.mcode.gateway.rpc.NonBlockingThreads;
 import com.mcode.gateway.rpc.serialization.Trans;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Controller;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
  * 同步回调管理器
+ * rpc调用以流水号注册一个future，设备响应到达时完成future，超时由时间轮触发，等待中的调用不占用线程
  */
 @Slf4j
 @Controller
 public class CallbackManager {
     private static Map<String, Consumer<Trans.event_data>> callbackInvoke = new ConcurrentHashMap<>(100);
+    /**
+     * 超时精度10ms，一个时间轮线程管理所有rpc调用的超时
+     */
+    private static final Timer RPC_TIMER = new HashedWheelTimer(NonBlockingThreads.wrap(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("rpc-timer-1");
+        thread.setDaemon(true);
+        return thread;
+    }), 10, TimeUnit.MILLISECONDS);
 
     /**
      * 注册回调
@@ -23,15 +39,59 @@ public class CallbackManager {
         callbackInvoke.put(serialNumber, consumer);
     }
 
+    /**
+     * 注册rpc调用
+     *
+     * @param timeout 超时时间，ms，超时后future以null完成
+     * @return 设备响应
+     */
+    public CompletableFuture<Trans.event_data> registerFuture(String serialNumber, long timeout) {
+        RpcCallback callback = new RpcCallback();
+        callbackInvoke.put(serialNumber, callback);
+        callback.timeout = RPC_TIMER.newTimeout(t -> {
+            if (callbackInvoke.remove(serialNumber, callback)) {
+                log.warn("rpc调用超时，流水号：{}", serialNumber);
+                callback.future.complete(null);
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        return callback.future;
+    }
+
+    /**
+     * 取消回调，消息未能发出时调用
+     */
+    public void removeCallback(String serialNumber) {
+        Consumer<Trans.event_data> consumer = callbackInvoke.remove(serialNumber);
+        if (consumer instanceof RpcCallback) {
+            ((RpcCallback) consumer).cancelTimeout();
+        }
+    }
+
     /**
      * 执行回调
      */
     public void execCallback(Trans.event_data event) {
         Consumer<Trans.event_data> consumer;
-        String serialNumber = event.getSerialNumber();
-        if ((consumer = callbackInvoke.get(serialNumber)) != null) {
+        if ((consumer = callbackInvoke.remove(event.getSerialNumber())) != null) {
             consumer.accept(event);
-            callbackInvoke.remove(serialNumber);
+        }
+    }
+
+    private static class RpcCallback implements Consumer<Trans.event_data> {
+        private final CompletableFuture<Trans.event_data> future = new CompletableFuture<>();
+        private volatile Timeout timeout;
+
+        @Override
+        public void accept(Trans.event_data event) {
+            cancelTimeout();
+            future.complete(event);
+        }
+
+        private void cancelTimeout() {
+            Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
         }
     }
 }
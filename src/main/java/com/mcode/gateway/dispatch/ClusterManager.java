@@ -5,6 +5,9 @@ import com.hazelcast.config.GroupConfig;
 import com.mcode.gateway.Bootstrap;
 import com.mcode.gateway.LoadOrder;
 import com.mcode.gateway.configuration.CommonConfig;
+import com.mcode.gateway.rpc.serialization.EventDataCodec;
+import com.mcode.gateway.rpc.serialization.EventFrame;
+import com.mcode.gateway.rpc.serialization.PayloadCompressor;
 import com.mcode.gateway.rpc.serialization.Trans;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.DeploymentOptions;
@@ -21,6 +24,7 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 @Component
@@ -32,7 +36,19 @@ public class ClusterManager implements Bootstrap {
     private MqEventUpStream eventUpStream;
     @Resource
     private CommonConfig commonConfig;
+    @Resource
+    private PayloadCompressor payloadCompressor;
     private static EventBus eventBus;
+    private static final long DEFAULT_SEND_TIMEOUT = 30 * 1000;
+    /**
+     * 事件通道已满时回复给发送方的失败码
+     */
+    public static final int EVENT_REJECTED = 503;
+    private final LongAdder droppedCount = new LongAdder();
+    /**
+     * 无消息头的默认投递参数，只读共享
+     */
+    private final DeliveryOptions defaultOptions = new DeliveryOptions().setSendTimeout(DEFAULT_SEND_TIMEOUT);
     private static Vertx vertx;
 
     @Override
@@ -53,9 +69,12 @@ public class ClusterManager implements Bootstrap {
     private void bootstrapHandler(AsyncResult<Vertx> event) {
         if (event.succeeded()) {
             vertx = event.result();
+            int httpInstances = commonConfig.getHttpInstances() > 0 ?
+                    commonConfig.getHttpInstances() : Runtime.getRuntime().availableProcessors();
             vertx.deployVerticle(HttpDownStream.class, new DeploymentOptions().
-                    setInstances(1));
+                    setInstances(httpInstances));
             eventBus = vertx.eventBus();
+            eventBus.registerDefaultCodec(Trans.event_data.class, new EventDataCodec(payloadCompressor));
             listen();
         } else {
             log.error("集群启动失败，{}", event.cause());
@@ -63,40 +82,73 @@ public class ClusterManager implements Bootstrap {
     }
 
     /**
-     * 监听本vertx节点的消息
+     * 监听本dispatcher的消息
+     * 同一dispatcherId的多个节点在同一地址上注册消费者，send时由eventBus轮询分配，作为消费组分担负载；publish时每个节点都收到
+     * 事件通道已满时无法像mq消息一样nack重新入队，丢弃的事件计数并记录，发送方等待应答时回复失败
      */
     public void listen() {
         log.info("load and listen eventBus ");
-        eventBus.consumer(commonConfig.getDispatcherId(),
-                (Handler<Message<byte[]>>) event -> {
-                    try {
-                        byte[] bytes = event.body();
-                        eventUpStream.handlerMessage(Trans.event_data.parseFrom(bytes));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+        eventBus.consumer(commonConfig.getDispatcherId(), (Handler<Message<Trans.event_data>>) event -> {
+            EventFrame frame = EventFrame.of(event.body());
+            if (!eventUpStream.handlerMessage(frame)) {
+                droppedCount.increment();
+                log.warn("事件通道已满，丢弃eventBus转发的事件：{}", frame);
+                if (event.replyAddress() != null) {
+                    event.fail(EVENT_REJECTED, "事件通道已满");
+                }
+            }
+        });
+    }
+
+    /**
+     * 转发上行消息到目标dispatcher，由{@link EventDataCodec}编解码，跨节点时超过阈值的消息压缩后传输
+     * 只由组内的一个节点处理，用于没有节点在等待的事件
+     *
+     * @param dispatcherId 目标dispatcher
+     * @param event        上行事件
+     */
+    public void sendUpstream(String dispatcherId, Trans.event_data event) {
+        send(dispatcherId, event);
+    }
+
+    /**
+     * 发布上行消息给目标dispatcher组的所有节点（包括本节点），用于应答事件：
+     * 请求登记在发起请求的节点上，收到应答的mq消费者不一定在该节点
+     *
+     * @param dispatcherId 目标dispatcher
+     * @param event        上行事件
+     */
+    public void publishUpstream(String dispatcherId, Trans.event_data event) {
+        Optional.ofNullable(ClusterManager.getEventBus()).ifPresent(eventBus ->
+                eventBus.publish(dispatcherId, event, defaultOptions));
+    }
+
+    /**
+     * eventBus转发到本节点、因事件通道已满被丢弃的事件数
+     */
+    public long droppedCount() {
+        return droppedCount.sum();
     }
 
     /**
-     * 发布消息到EventBus
+     * 点对点发送消息到EventBus，地址上有多个消费者时只有其中一个收到
      *
-     * @param serialNumber 指令流水号
-     * @param message      消息
+     * @param address 地址，如dispatcherId、指令流水号
+     * @param message 消息
      */
-    public void publish(String serialNumber, Object message) {
-        publish(serialNumber, message, null);
+    public void send(String address, Object message) {
+        send(address, message, null);
     }
 
-    public void publish(String serialNumber, Object message, CaseInsensitiveHeaders headers) {
-        publish(serialNumber, message, headers, 30 * 1000);
+    public void send(String address, Object message, CaseInsensitiveHeaders headers) {
+        send(address, message, headers, DEFAULT_SEND_TIMEOUT);
     }
 
-    public void publish(String serialNumber, Object message, CaseInsensitiveHeaders headers, long sendTimeout) {
+    public void send(String address, Object message, CaseInsensitiveHeaders headers, long sendTimeout) {
+        DeliveryOptions options = headers == null && sendTimeout == DEFAULT_SEND_TIMEOUT ? defaultOptions :
+                new DeliveryOptions().setHeaders(headers).setSendTimeout(sendTimeout);
         Optional.ofNullable(ClusterManager.getEventBus()).ifPresent(eventBus ->
-                eventBus.publish(serialNumber,
-                        message,
-                        new DeliveryOptions().setHeaders(headers).setSendTimeout(sendTimeout)));
+                eventBus.send(address, message, options));
     }
 
     /**
@@ -0,0 +1,147 @@
+package com.mcode.gateway.dispatch;
+
+import com.mcode.gateway.rpc.serialization.EventFrame;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 事件处理通道
+ * 每个通道独占一个有界队列及一条处理线程，通道内的事件严格按入队顺序串行处理
+ * 处理线程阻塞等待第一个事件，随后以drainTo一次取出队列中已积压的事件，按批交给处理函数
+ * 队列深度超过高水位时通道进入拥塞状态，回落到低水位后解除，状态变化时通知上游暂停/恢复消费
+ */
+@Slf4j
+public class EventLane {
+    private final String name;
+    private final BlockingQueue<EventFrame> eventQueue;
+    private final Consumer<List<EventFrame>> handler;
+    private final int burstSize;
+    private final Thread thread;
+    private final int capacity;
+    private int highWatermark;
+    private int lowWatermark;
+    private Runnable flowListener;
+    private final AtomicBoolean congested = new AtomicBoolean(false);
+    private final LongAdder congestionCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param burstSize 单批最多取出的事件数
+     * @param handler   批量处理函数，批次列表在处理后被清空复用
+     */
+    public EventLane(String name, int capacity, int burstSize, Consumer<List<EventFrame>> handler) {
+        this.name = name;
+        this.eventQueue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.highWatermark = capacity;
+        this.lowWatermark = capacity;
+        this.burstSize = Math.max(1, burstSize);
+        this.handler = handler;
+        this.thread = new Thread(this::loop, name);
+    }
+
+    /**
+     * 设置高低水位，需在启动前调用
+     *
+     * @param high         高水位，占容量的比例
+     * @param low          低水位，占容量的比例
+     * @param flowListener 拥塞状态变化时的回调，在投递线程或处理线程中执行，不能阻塞
+     */
+    public void watermark(double high, double low, Runnable flowListener) {
+        this.highWatermark = Math.max(1, (int) (capacity * high));
+        this.lowWatermark = Math.min(highWatermark - 1, (int) (capacity * low));
+        this.flowListener = flowListener;
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * 投递事件，队列已满时返回false
+     */
+    public boolean offer(EventFrame frame) {
+        frame.markEnqueued();
+        boolean accepted = eventQueue.offer(frame);
+        if (!accepted) {
+            rejectedCount.increment();
+        }
+        if (eventQueue.size() >= highWatermark && congested.compareAndSet(false, true)) {
+            congestionCount.increment();
+            log.warn("{}事件队列超过高水位{}，暂停上游消费", name, highWatermark);
+            notifyFlow();
+        }
+        return accepted;
+    }
+
+    public boolean isCongested() {
+        return congested.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 进入拥塞状态的次数
+     */
+    public long congestionCount() {
+        return congestionCount.sum();
+    }
+
+    /**
+     * 队列已满被拒绝的事件数
+     */
+    public long rejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    private void notifyFlow() {
+        if (flowListener != null) {
+            flowListener.run();
+        }
+    }
+
+    /**
+     * 队列中待处理的事件数
+     */
+    public int depth() {
+        return eventQueue.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @SuppressWarnings("InfiniteLoopStatement")
+    private void loop() {
+        List<EventFrame> burst = new ArrayList<>(burstSize);
+        while (true) {
+            try {
+                burst.add(eventQueue.take());
+            } catch (InterruptedException e) {
+                log.warn("{}被中断", name);
+                continue;
+            }
+            eventQueue.drainTo(burst, burstSize - 1);
+            if (congested.get() && eventQueue.size() <= lowWatermark && congested.compareAndSet(true, false)) {
+                log.info("{}事件队列回落到低水位{}，恢复上游消费", name, lowWatermark);
+                notifyFlow();
+            }
+            try {
+                handler.accept(burst);
+            } catch (Exception e) {
+                log.warn("事件处理异常，{}", e);
+            } finally {
+                burst.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.mcode.gateway.dispatch;
+
+import com.mcode.gateway.Bootstrap;
+import com.mcode.gateway.LoadOrder;
+import com.mcode.gateway.configuration.CommonConfig;
+import com.mcode.gateway.rpc.serialization.EventFrame;
+import com.mcode.gateway.type.EventTypeEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事件处理耗时统计
+ * 按事件类型统计处理耗时、入队到分发的排队耗时及吞吐量，批量处理时按批次均摊到每条事件
+ * 看门狗定时检查各处理线程当前批次的耗时，超过阈值时打印一次该线程的调用栈，定位占用事件通道的处理器
+ */
+@Slf4j
+@Component
+@LoadOrder(value = 2)
+public class EventMetrics implements Bootstrap {
+    @Resource
+    private CommonConfig commonConfig;
+    private final Map<Integer, TypeMetrics> typeMetrics = new ConcurrentHashMap<>();
+    private final List<Inflight> inflights = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Inflight> localInflight = ThreadLocal.withInitial(() -> {
+        Inflight inflight = new Inflight(Thread.currentThread());
+        inflights.add(inflight);
+        return inflight;
+    });
+    private final LongAdder slowCount = new LongAdder();
+    private ScheduledExecutorService watchdog;
+
+    @Override
+    public void init() {
+        long threshold = commonConfig.getSlowEventThreshold();
+        if (threshold <= 0) {
+            log.info("慢事件看门狗未开启");
+            return;
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("event-watchdog-1");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(10, threshold / 2);
+        watchdog.scheduleWithFixedDelay(() -> inspect(TimeUnit.MILLISECONDS.toNanos(threshold)),
+                interval, interval, TimeUnit.MILLISECONDS);
+        log.info("启动慢事件看门狗，阈值{}ms", threshold);
+    }
+
+    /**
+     * 记录一批事件从入队到分发的排队耗时
+     */
+    public void dispatched(List<EventFrame> frames) {
+        long now = System.nanoTime();
+        for (EventFrame frame : frames) {
+            metrics(frame.getType()).queueWait.record((now - frame.getEnqueueNanos()) / 1000);
+        }
+    }
+
+    /**
+     * 执行并统计一批同类型事件的处理
+     *
+     * @param type 事件类型
+     * @param size 批次条数
+     */
+    public void execute(int type, int size, Runnable task) {
+        Inflight inflight = localInflight.get();
+        long start = System.nanoTime();
+        inflight.begin(type, size, start);
+        try {
+            task.run();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            inflight.end();
+            TypeMetrics metrics = metrics(type);
+            metrics.handle.record(elapsed / 1000 / Math.max(1, size), size);
+            metrics.batches.increment();
+        }
+    }
+
+    private TypeMetrics metrics(int type) {
+        TypeMetrics metrics = typeMetrics.get(type);
+        return metrics != null ? metrics : typeMetrics.computeIfAbsent(type, t -> new TypeMetrics());
+    }
+
+    /**
+     * 超过阈值且尚未报告过的批次，打印处理线程的调用栈
+     */
+    private void inspect(long thresholdNanos) {
+        long now = System.nanoTime();
+        for (Inflight inflight : inflights) {
+            long start = inflight.start;
+            if (start == 0 || inflight.reported == start || now - start < thresholdNanos) {
+                continue;
+            }
+            inflight.reported = start;
+            slowCount.increment();
+            StringBuilder stack = new StringBuilder();
+            for (StackTraceElement element : inflight.thread.getStackTrace()) {
+                stack.append("\r\n\tat ").append(element);
+            }
+            log.warn("{}处理事件{}（{}条）已耗时{}ms，调用栈：{}", inflight.thread.getName(), typeName(inflight.type),
+                    inflight.size, TimeUnit.NANOSECONDS.toMillis(now - start), stack);
+        }
+    }
+
+    private static String typeName(int type) {
+        EventTypeEnum eventType = EventTypeEnum.getEnumByCode(type);
+        return eventType == null ? String.valueOf(type) : eventType.getDesc();
+    }
+
+    /**
+     * 各事件类型的处理耗时、排队耗时及吞吐量
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Object> types = new LinkedHashMap<>();
+        new TreeMap<>(typeMetrics).forEach((type, metrics) -> {
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("events", metrics.handle.count());
+            stat.put("batches", metrics.batches.sum());
+            stat.put("handle", metrics.handle.stats());
+            stat.put("queueWait", metrics.queueWait.stats());
+            types.put(typeName(type), stat);
+        });
+        stats.put("slowEventThreshold", commonConfig.getSlowEventThreshold());
+        stats.put("slowBatches", slowCount.sum());
+        stats.put("types", types);
+        return stats;
+    }
+
+    private static class TypeMetrics {
+        private final LatencyHistogram handle = new LatencyHistogram();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LongAdder batches = new LongAdder();
+    }
+
+    /**
+     * 处理线程当前正在执行的批次，start为0表示空闲
+     */
+    private static class Inflight {
+        private final Thread thread;
+        private volatile int type;
+        private volatile int size;
+        private volatile long start;
+        private long reported;
+
+        private Inflight(Thread thread) {
+            this.thread = thread;
+        }
+
+        private void begin(int type, int size, long start) {
+            this.type = type;
+            this.size = size;
+            this.start = start;
+        }
+
+        private void end() {
+            start = 0;
+        }
+    }
+}
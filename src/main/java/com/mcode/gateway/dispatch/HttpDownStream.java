@@ -6,6 +6,7 @@ import com.mcode.gateway.configuration.CommonConfig;
 import com.mcode.gateway.mvc.DispatcherProxy;
 import com.mcode.gateway.util.SpringContextUtil;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServer;
@@ -13,17 +14,22 @@ import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.http.HttpServerRequest;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HTTP 下行请求处理
+ * 部署多个实例，每个实例运行在各自的event loop上，vert.x在各实例的同端口server之间分配连接
  */
 @Slf4j
 public class HttpDownStream extends AbstractVerticle {
-    public static HttpServer httpServer;
+    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger(1);
+    private static final Gson GSON = new Gson();
+    private HttpServer httpServer;
+    private final int instance = INSTANCE_COUNTER.getAndIncrement();
     private CommonConfig commonConfig = SpringContextUtil.getBean(CommonConfig.class);
     private DispatcherProxy dispatcherProxy = SpringContextUtil.getBean(DispatcherProxy.class);
-    private AtomicInteger instance = new AtomicInteger(1);
 
     @Override
     public void start() throws Exception {
@@ -38,13 +44,21 @@ public class HttpDownStream extends AbstractVerticle {
     private void loadConnectionProcessor() {
         Handler<HttpServerRequest> handler = request -> {
             Handler<Buffer> bodyHandler = buffer -> {
+                CompletableFuture<String> result;
                 try {
                     //HTTP路由
-                    String result = dispatcherProxy.routingHTTP(request, buffer.getString(0, buffer.length()));
-                    writeSuccessResponse(request, result);
+                    result = dispatcherProxy.routingHTTP(request, buffer);
                 } catch (Exception e) {
                     log.error("HTTP request异常，{}", e);
                     writeFailResponse(request, e.getMessage());
+                    return;
+                }
+                if (result.isDone()) {
+                    writeResponse(request, result);
+                } else {
+                    //异步完成的结果（rpc响应或超时）在其他线程中到达，切回本实例的event loop写响应
+                    Context context = vertx.getOrCreateContext();
+                    result.whenComplete((r, e) -> context.runOnContext(v -> writeResponse(request, result)));
                 }
             };
             Handler<Throwable> exceptionHandler = throwable -> {
@@ -62,13 +76,24 @@ public class HttpDownStream extends AbstractVerticle {
     private void loadBootstrapListener() {
         httpServer.listen(commonConfig.getHttpPort(), commonConfig.getHost(), httpServerAsyncResult -> {
             if (httpServerAsyncResult.succeeded()) {
-                log.info("vert.x HTTP实例{}启动成功,端口：{}", instance.getAndIncrement(), commonConfig.getHttpPort());
+                log.info("vert.x HTTP实例{}启动成功,端口：{}", instance, commonConfig.getHttpPort());
             } else {
-                log.info("vert.x HTTP实例{}启动成功,端口：{}", instance.getAndIncrement(), commonConfig.getHttpPort());
+                log.error("vert.x HTTP实例{}启动失败,端口：{}，{}", instance, commonConfig.getHttpPort(),
+                        httpServerAsyncResult.cause());
             }
         });
     }
 
+    private void writeResponse(HttpServerRequest request, CompletableFuture<String> result) {
+        try {
+            writeSuccessResponse(request, result.join());
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            log.error("HTTP request异常，{}", cause);
+            writeFailResponse(request, cause.getMessage());
+        }
+    }
+
     private void writeSuccessResponse(HttpServerRequest httpServerRequest, String result) {
         httpServerRequest.response().
                 putHeader("content-type", "application/json").
@@ -78,7 +103,7 @@ public class HttpDownStream extends AbstractVerticle {
     }
 
     private void writeFailResponse(HttpServerRequest httpServerRequest, String message) {
-        String failMessage = new Gson().toJson(new BaseResult(500, message));
+        String failMessage = GSON.toJson(new BaseResult(500, message));
         httpServerRequest.response().
                 setStatusCode(500).
                 putHeader("content-type", "application/json").
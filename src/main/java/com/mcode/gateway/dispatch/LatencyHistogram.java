@@ -0,0 +1,98 @@
+package com.mcode.gateway.dispatch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数分桶的延迟直方图，单位微秒
+ * 小于16us的值逐个计数，之后每个2的幂区间再等分为8个子桶，相对误差不超过12.5%
+ * 记录只有一次数组下标计算和一次原子加，可以在事件通道线程中每批调用
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * 覆盖到2^40us，约12天
+     */
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_MAGNITUDE - 4 + 1) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void record(long micros) {
+        record(micros, 1);
+    }
+
+    /**
+     * 以相同的值记录多次，用于批量处理时按批次均摊的单条耗时
+     */
+    public void record(long micros, int times) {
+        micros = Math.max(0, micros);
+        counts.addAndGet(index(micros), times);
+        totalCount.add(times);
+        totalMicros.add(micros * times);
+        maxMicros.accumulate(micros);
+    }
+
+    private static int index(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_MAGNITUDE);
+        int sub = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (magnitude - 4) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶的上界
+     */
+    private static long upperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int magnitude = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (1L << magnitude) + ((long) (sub + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * @param percentile 0~100
+     */
+    public long percentile(double percentile) {
+        long total = totalCount.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    public long count() {
+        return totalCount.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = totalCount.sum();
+        stats.put("count", count);
+        stats.put("avgMicros", count == 0 ? 0 : totalMicros.sum() / count);
+        stats.put("p50Micros", percentile(50));
+        stats.put("p99Micros", percentile(99));
+        stats.put("p999Micros", percentile(99.9));
+        stats.put("maxMicros", maxMicros.get());
+        return stats;
+    }
+}
@@ -1,23 +1,29 @@
 package com.mcode.gateway.dispatch;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.mcode.gateway.Bootstrap;
 import com.mcode.gateway.LoadOrder;
 import com.mcode.gateway.configuration.CommonConfig;
-import com.mcode.gateway.dispatch.event.EventHandlerPipeline;
+import com.mcode.gateway.dispatch.event.EventHandler;
 import com.mcode.gateway.dispatch.event.PipelineContainer;
+import com.mcode.gateway.rpc.serialization.EventFrame;
 import com.mcode.gateway.rpc.serialization.Trans;
+import com.mcode.gateway.type.EventTypeEnum;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
  * 上行请求处理
+ * 心跳、注册、登录等控制事件与数据上报分别进入控制通道和数据通道，
+ * 数据突发时控制事件不必排在数据之后，心跳延迟不受数据量影响
+ * 数据通道按设备分区为多条单线程通道，同一设备的事件总在同一通道中按序处理
  */
 @Slf4j
 @Component
@@ -27,75 +33,202 @@ public class MqEventUpStream implements Bootstrap {
     private CommonConfig commonConfig;
     @Resource
     private PipelineContainer pipelineContainer;
-    private ArrayBlockingQueue<Trans.event_data> eventQueue;
-    private ExecutorService eventExecutor;
-    private final Object lock = new Object();
+    @Resource
+    private BlockingExecutor blockingExecutor;
+    @Resource
+    private EventMetrics eventMetrics;
+    private EventLane controlLane;
+    private EventLane[] dataLanes;
+    /**
+     * 通道拥塞状态变化时的回调，由mq消费者注册
+     */
+    private volatile Runnable flowListener;
 
     private void initQueue() {
-        eventQueue = new ArrayBlockingQueue<>(commonConfig.getMqEventQueueSize());
-        eventExecutor = new ThreadPoolExecutor(
-                1, 1, 0, TimeUnit.MILLISECONDS,
-                new ArrayBlockingQueue<>(100), r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("event-loop-1");
-                    return thread;
-                });
+        int burstSize = commonConfig.getEventBurstSize();
+        controlLane = new EventLane("event-loop-control", commonConfig.getControlEventQueueSize(), burstSize,
+                burst -> dispatch(burst, true));
+        int lanes = commonConfig.getEventLoopLanes() > 0 ?
+                commonConfig.getEventLoopLanes() : Runtime.getRuntime().availableProcessors();
+        dataLanes = new EventLane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            dataLanes[i] = new EventLane("event-loop-" + (i + 1), commonConfig.getMqEventQueueSize(), burstSize,
+                    burst -> dispatch(burst, false));
+        }
+        double high = commonConfig.getEventQueueHighWatermark();
+        double low = commonConfig.getEventQueueLowWatermark();
+        controlLane.watermark(high, low, this::notifyFlow);
+        for (EventLane lane : dataLanes) {
+            lane.watermark(high, low, this::notifyFlow);
+        }
+    }
+
+    /**
+     * 投递事件到对应的通道，只依据路由字段选择通道，完整解析推迟到通道线程
+     *
+     * @return 通道队列已满时返回false
+     */
+    public boolean handlerMessage(EventFrame frame) {
+        EventLane lane = EventTypeEnum.isControl(frame.getType()) ? controlLane : selectLane(frame);
+        if (!lane.offer(frame)) {
+            log.warn("HttpUpStream事件处理队列已满:{}", lane.getName());
+            return false;
+        }
+        return true;
     }
 
-    public void handlerMessage(Trans.event_data event) {
-        synchronized (lock) {
-            if (!eventQueue.add(event)) {
-                log.warn("HttpUpStream事件处理队列已满");
+    /**
+     * 注册通道拥塞状态变化的回调，回调中应通过{@link #isCongested(boolean)}读取最新状态
+     */
+    public void setFlowListener(Runnable flowListener) {
+        this.flowListener = flowListener;
+    }
+
+    private void notifyFlow() {
+        Runnable listener = flowListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * 通道是否拥塞，任一数据通道超过高水位即视为数据通道拥塞
+     *
+     * @param control 控制通道或数据通道
+     */
+    public boolean isCongested(boolean control) {
+        if (control) {
+            return controlLane.isCongested();
+        }
+        for (EventLane lane : dataLanes) {
+            if (lane.isCongested()) {
+                return true;
             }
-            lock.notify();
         }
+        return false;
     }
 
     /**
-     * eventLoop单线程，纯内存操作目无须修改其线程数
-     * 否则一定会出现线程安全问题，如果要执行阻塞操作参考{@link ClusterManager#getVertx()}
+     * 各通道的队列占用
      */
-    @SuppressWarnings({"Duplicates", "InfiniteLoopStatement"})
-    private void exeEventLoop() {
-        eventExecutor.execute(() -> {
-            while (true) {
-                Trans.event_data event;
-                synchronized (lock) {
-                    while ((event = eventQueue.poll()) == null) {
-                        try {
-                            lock.wait();
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-                try {
-                    Integer eventType = event.getType();
-                    String serialNumber = event.getSerialNumber();
-                    Consumer<Trans.event_data> consumer;
-                    EventHandlerPipeline pipeline = pipelineContainer.getPipelineBySerialId(serialNumber);
-                    //若未注册pipeline，使用默认的pipeline
-                    if (pipeline == null) {
-                        pipeline = pipelineContainer.getDefaultPipeline();
-                    }
-                    if ((consumer = pipeline.adaptEventHandler(eventType)) != null) {
-                        consumer.accept(event);
-                        pipelineContainer.removePipeline(serialNumber);
-                    } else {
-                        log.warn("未经注册的事件，{}", event.asString());
-                    }
-                } catch (Exception e) {
-                    log.warn("事件处理异常，{}", e);
-                }
+    public List<Map<String, Object>> laneStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(dataLanes.length + 1);
+        stats.add(laneStat(controlLane));
+        for (EventLane lane : dataLanes) {
+            stats.add(laneStat(lane));
+        }
+        return stats;
+    }
+
+    private Map<String, Object> laneStat(EventLane lane) {
+        Map<String, Object> stat = new LinkedHashMap<>();
+        stat.put("name", lane.getName());
+        stat.put("depth", lane.depth());
+        stat.put("capacity", lane.capacity());
+        stat.put("occupancy", (double) lane.depth() / lane.capacity());
+        stat.put("congested", lane.isCongested());
+        stat.put("congestions", lane.congestionCount());
+        stat.put("rejected", lane.rejectedCount());
+        return stat;
+    }
+
+    /**
+     * 设备事件按eqId分区，节点级事件按nodeArtifactId分区
+     */
+    private EventLane selectLane(EventFrame frame) {
+        return dataLanes[(frame.partitionKey().hashCode() & Integer.MAX_VALUE) % dataLanes.length];
+    }
+
+    /**
+     * 每个通道单线程，同一设备的事件只在一条线程中串行处理，事件处理器无状态或仅持有线程安全的容器
+     * 一批事件中连续的同一类型、由同一处理器处理的事件合并为一段，交给处理器的acceptBatch，处理耗时按段统计到{@link EventMetrics}
+     * 标记了{@link com.mcode.gateway.dispatch.event.Blocking}的处理器交给{@link BlockingExecutor}按同一分区键执行，
+     * 控制通道与数据通道使用各自的阻塞执行器
+     * 处理器按路由字段查找，找到处理器之后才完整解析事件，未注册的事件不解析
+     *
+     * @param control 是否为控制通道
+     */
+    private void dispatch(List<EventFrame> burst, boolean control) {
+        eventMetrics.dispatched(burst);
+        Consumer<Trans.event_data> runConsumer = null;
+        int runType = 0;
+        List<EventFrame> run = null;
+        for (EventFrame frame : burst) {
+            Consumer<Trans.event_data> consumer = pipelineContainer.adaptEventHandler(frame.getSerialNumber(), frame.getType());
+            if (consumer == null) {
+                log.warn("未经注册的事件，{}", frame);
+                continue;
+            }
+            if (consumer != runConsumer || frame.getType() != runType) {
+                invoke(runConsumer, run, control);
+                runConsumer = consumer;
+                runType = frame.getType();
+                run = new ArrayList<>();
+            }
+            run.add(frame);
+        }
+        invoke(runConsumer, run, control);
+    }
+
+    private void invoke(Consumer<Trans.event_data> consumer, List<EventFrame> frames, boolean control) {
+        if (consumer == null || frames.isEmpty()) {
+            return;
+        }
+        if (blockingExecutor.isBlocking(consumer)) {
+            blockingExecutor.execute(consumer, frames, control);
+        } else {
+            eventMetrics.execute(frames.get(0).getType(), frames.size(), () -> acceptBatch(consumer, decode(frames)));
+        }
+    }
+
+    /**
+     * 完整解析一批事件，无法解析的事件记录后跳过
+     */
+    static List<Trans.event_data> decode(List<EventFrame> frames) {
+        List<Trans.event_data> events = new ArrayList<>(frames.size());
+        for (EventFrame frame : frames) {
+            try {
+                events.add(frame.decode());
+            } catch (InvalidProtocolBufferException e) {
+                log.warn("事件解析失败，丢弃{}，{}", frame, e);
             }
-        });
+        }
+        return events;
+    }
+
+    /**
+     * EventHandler按批处理，动态注册的consumer逐条处理
+     *
+     * @return 处理失败的事件数
+     */
+    static int acceptBatch(Consumer<Trans.event_data> consumer, List<Trans.event_data> events) {
+        if (events.isEmpty()) {
+            return 0;
+        }
+        if (consumer instanceof EventHandler) {
+            return ((EventHandler) consumer).acceptBatch(events);
+        }
+        int failed = 0;
+        for (Trans.event_data event : events) {
+            try {
+                consumer.accept(event);
+            } catch (Exception e) {
+                failed++;
+                log.warn("事件处理异常，{}", e);
+            }
+        }
+        return failed;
     }
 
     @Override
     public void init() {
         log.info("load event queue and event poller thread");
         initQueue();
-        exeEventLoop();
+        controlLane.start();
+        for (EventLane lane : dataLanes) {
+            lane.start();
+        }
+        log.info("启动1条控制通道及{}条数据通道", dataLanes.length);
     }
 
 
@@ -3,6 +3,7 @@ package com.mcode.gateway.dispatch.event;
 
 import com.mcode.gateway.rpc.MqConnector;
 import com.mcode.gateway.rpc.PublishEvent;
+import com.mcode.gateway.rpc.serialization.EventEncoder;
 import com.mcode.gateway.rpc.serialization.Trans;
 import com.mcode.gateway.type.EventTypeEnum;
 import com.mcode.gateway.util.CommonUtil;
@@ -12,6 +13,14 @@ import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 扩展抽象类，标注为异步事件处理器
@@ -36,18 +45,40 @@ public abstract class AsyncEventHandler extends CommonUtil implements EventHandl
         }
     }
 
+    /**
+     * 批量验证节点是否已经注册，一次redis往返
+     *
+     * @return 已注册的节点
+     */
+    protected Set<String> registeredNodes(Collection<String> nodeArtifactIds) {
+        Map<String, Response<Boolean>> exists = new HashMap<>();
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (String nodeArtifactId : nodeArtifactIds) {
+                exists.computeIfAbsent(nodeArtifactId, pipeline::exists);
+            }
+            pipeline.sync();
+        }
+        Set<String> registered = new HashSet<>();
+        exists.forEach((nodeArtifactId, response) -> {
+            if (Boolean.TRUE.equals(response.get())) {
+                registered.add(nodeArtifactId);
+            }
+        });
+        return registered;
+    }
+
     /**
      * 通知该节点断线重连
      */
     protected void reConnectPush(String eqQueueName, String nodeArtifactId) {
         String id = String.valueOf(IdGenerator.buildDistributedId());
-        Trans.event_data.Builder eventEntry = Trans.event_data.newBuilder();
-        byte[] bytes = eventEntry.setType(EventTypeEnum.DROPPED.getType()).
+        Trans.event_data.Builder eventEntry = EventEncoder.builder();
+        byte[] bytes = EventEncoder.encode(eventEntry.setType(EventTypeEnum.DROPPED.getType()).
                 setSerialNumber(id).
-                setTimeStamp(System.currentTimeMillis()).
-                build().toByteArray();
+                setTimeStamp(System.currentTimeMillis()));
         //drop
-        PublishEvent publishEvent = new PublishEvent(eqQueueName, bytes, id);
+        PublishEvent publishEvent = PublishEvent.newInstance(eqQueueName, bytes, id);
         publishEvent.addHeaders(MqConnector.CONNECTOR_ID, nodeArtifactId);
         mqConnector.publishAsync(publishEvent);
     }
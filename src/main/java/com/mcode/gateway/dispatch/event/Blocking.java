@@ -0,0 +1,16 @@
+package com.mcode.gateway.dispatch.event;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记执行阻塞操作（redis、DB、http等）的事件处理器
+ * 被标记的处理器不在事件通道线程中执行，而是按设备分区交给有界的阻塞任务线程池，同一设备的事件仍按序处理
+ * 详见{@link com.mcode.gateway.dispatch.BlockingExecutor}
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Blocking {
+}
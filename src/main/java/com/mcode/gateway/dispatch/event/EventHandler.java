@@ -4,8 +4,10 @@ package com.mcode.gateway.dispatch.event;
 import com.mcode.gateway.rpc.MqConnector;
 import com.mcode.gateway.rpc.PublishEvent;
 import com.mcode.gateway.rpc.serialization.Trans;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -34,6 +36,28 @@ public interface EventHandler extends Consumer<Trans.event_data>,BeanFactoryAwar
      * @param event 事件
      */
     void accept(Trans.event_data event);
+
+    /**
+     * 批量事件处理，事件循环一次取出的同类型事件会合并为一批交给处理器
+     * 默认逐条处理，单条事件异常不影响同批次的其他事件；需要合并redis/DB往返的处理器可重写
+     * 重写时需按条统计处理失败的事件，整批失败时直接抛出异常，由调用方按整批计数
+     *
+     * @param events 同类型事件，按到达顺序排列
+     * @return 处理失败的事件数
+     */
+    default int acceptBatch(List<Trans.event_data> events) {
+        int failed = 0;
+        for (Trans.event_data event : events) {
+            try {
+                accept(event);
+            } catch (Exception e) {
+                failed++;
+                LoggerFactory.getLogger(getClass()).warn("事件处理异常，{}", e);
+            }
+        }
+        return failed;
+    }
+
     /**
      * 设置事件类型
      *
@@ -4,18 +4,19 @@ import com.mcode.gateway.rpc.serialization.Trans;
 import com.mcode.gateway.type.EventTypeEnum;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.function.Consumer;
 
 /**
  * eventHandler流水线
  * 动态添加/停用eventHandler
+ * 处理器按事件类型编码存放在数组中，变更时复制出新数组再整体替换，读取无锁、无装箱
  */
 @Slf4j
-public class EventHandlerPipeline implements Cloneable{
-    //pipeline中的消费者事件字典
-    private Map<Integer, Consumer<Trans.event_data>> eventHandler = new HashMap<>();
+public class EventHandlerPipeline {
+    //pipeline中的消费者事件表，下标为事件类型
+    @SuppressWarnings("unchecked")
+    private volatile Consumer<Trans.event_data>[] eventHandler = new Consumer[0];
 
     public EventHandlerPipeline addEventHandler(EventHandler eventHandler) {
         Integer eventType = eventHandler.setEventType();
@@ -29,36 +30,32 @@ public class EventHandlerPipeline implements Cloneable{
      * @param eventType 事件类型
      * @param consumer 消费者
      */
-    public void addEventHandler(Integer eventType, Consumer<Trans.event_data> consumer) {
-        eventHandler.put(eventType, consumer);
+    public synchronized void addEventHandler(Integer eventType, Consumer<Trans.event_data> consumer) {
+        Consumer<Trans.event_data>[] handlers = Arrays.copyOf(eventHandler, Math.max(eventHandler.length, eventType + 1));
+        handlers[eventType] = consumer;
+        eventHandler = handlers;
     }
 
     /**
      * 移除事件处理器
      * @param eventType 事件类型
      */
-    public void removeEventHandler(Integer eventType) {
-        eventHandler.remove(eventType);
+    public synchronized void removeEventHandler(Integer eventType) {
+        if (eventType >= 0 && eventType < eventHandler.length) {
+            Consumer<Trans.event_data>[] handlers = Arrays.copyOf(eventHandler, eventHandler.length);
+            handlers[eventType] = null;
+            eventHandler = handlers;
+        }
     }
 
     /**
      * 根据事件类型获取事件处理器
-     * @param eventType
-     * @return
+     * @param eventType 事件类型
+     * @return 未注册时返回null
      */
-    public Consumer<Trans.event_data> adaptEventHandler(Integer eventType) {
-        return eventHandler.get(eventType);
-    }
-
-    @Override
-    public Object clone() {
-        EventHandlerPipeline pipeline = null;
-        try {
-            pipeline = (EventHandlerPipeline) super.clone();
-        } catch (CloneNotSupportedException e) {
-            e.printStackTrace();
-        }
-        return pipeline;
+    public Consumer<Trans.event_data> adaptEventHandler(int eventType) {
+        Consumer<Trans.event_data>[] handlers = eventHandler;
+        return eventType >= 0 && eventType < handlers.length ? handlers[eventType] : null;
     }
 
 }
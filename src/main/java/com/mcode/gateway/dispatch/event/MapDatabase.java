@@ -13,6 +13,7 @@ import javax.annotation.Resource;
 import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
@@ -46,20 +47,29 @@ public class MapDatabase {
     }
 
     /**
-     * 支持并发写
+     * 支持并发写，与close互斥，避免写入其他线程刚关闭的DB
      */
     @SneakyThrows
-    public MapDatabase write(String key, Object value, String selectDB) {
+    public synchronized MapDatabase write(String key, Object value, String selectDB) {
         Optional.of(connect(selectDB)).ifPresent(map -> map.put(key, gson.toJson(value)));
         return this;
     }
 
+    /**
+     * 批量写，一次连接写入全部记录
+     */
+    public synchronized MapDatabase writeAll(Map<String, ?> values, String selectDB) {
+        HTreeMap<String, String> map = connect(selectDB);
+        values.forEach((key, value) -> map.put(key, gson.toJson(value)));
+        return this;
+    }
+
     /**
      * 删除记录
      * @param key 键
      * @param selectDB dbName
      */
-    public void remove(String key, String selectDB) {
+    public synchronized void remove(String key, String selectDB) {
         Optional.of(connect(selectDB)).ifPresent(map -> map.remove(key));
     }
 
@@ -76,12 +86,26 @@ public class MapDatabase {
         return msgList;
     }
 
+    /**
+     * 读取并清空，用于一次性取回全部待重发的记录
+     */
+    public synchronized <T> List<T> readAndClear(Class<T> type, String selectDB) {
+        LinkedList<T> msgList = new LinkedList<>();
+        Optional.of(connect(selectDB)).ifPresent(map -> {
+            map.forEach((key, value) -> msgList.add(gson.fromJson(value, type)));
+            map.clear();
+        });
+        return msgList;
+    }
+
     /**
      * 注意写操作完成一定要closeDB，否则会导致脏数据
      */
-    public void close() {
+    public synchronized void close() {
         if (db != null) {
             db.close();
+            //关闭后置空，下次读写时重新连接
+            db = null;
         }
     }
 
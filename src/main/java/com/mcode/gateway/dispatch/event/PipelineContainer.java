@@ -3,40 +3,67 @@ package com.mcode.gateway.dispatch.event;
 import com.mcode.gateway.Bootstrap;
 import com.mcode.gateway.LoadOrder;
 import com.mcode.gateway.dispatch.event.handler.ReceiveResponseSync;
+import com.mcode.gateway.rpc.serialization.Trans;
 import com.mcode.gateway.util.SpringContextUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
 @LoadOrder(value = 10)
 public class PipelineContainer implements Bootstrap {
-    //一个请求对应一个pipeline
-    private static Map<String, EventHandlerPipeline> pipelineMap = new ConcurrentHashMap<>();
     //默认公共的pipeline，所有实现了EventHandler的子类都会被注册到默认的pipeline中
     private static final EventHandlerPipeline defaultPipeline = new EventHandlerPipeline();
+    //RPC请求的流水号 -> 覆盖默认pipeline的响应处理器
+    private static final Map<String, RpcHandler> rpcHandlers = new ConcurrentHashMap<>();
 
     //获取默认的pipeline
     public EventHandlerPipeline getDefaultPipeline() {
         return defaultPipeline;
     }
 
-    //根据流水号获取pipeline
-    public EventHandlerPipeline getPipelineBySerialId(String seriaId) {
-        return pipelineMap.get(seriaId);
+    /**
+     * 为RPC请求注册响应处理器，该流水号的同类型事件由其处理，处理一次后自动卸载
+     *
+     * @param serialNumber 流水号
+     * @param eventHandler 响应处理器
+     */
+    public void registerRpcHandler(String serialNumber, EventHandler eventHandler) {
+        rpcHandlers.put(serialNumber, new RpcHandler(eventHandler.setEventType(), eventHandler));
     }
 
-    //添加pipeline
-    public void addPipeline(String seriaId, EventHandlerPipeline pipeline) {
-        pipelineMap.put(seriaId, pipeline);
+    //卸载RPC响应处理器，RPC超时后响应交还给默认pipeline
+    public void removeRpcHandler(String serialNumber) {
+        rpcHandlers.remove(serialNumber);
     }
 
-    //卸载pipeline
-    public void removePipeline(String seriaId) {
-        pipelineMap.remove(seriaId);
+    /**
+     * 获取事件处理器，优先使用该流水号注册的RPC响应处理器
+     *
+     * @return 未注册时返回null
+     */
+    public Consumer<Trans.event_data> adaptEventHandler(String serialNumber, int eventType) {
+        if (!rpcHandlers.isEmpty()) {
+            RpcHandler rpcHandler = rpcHandlers.get(serialNumber);
+            if (rpcHandler != null && rpcHandler.eventType == eventType && rpcHandlers.remove(serialNumber, rpcHandler)) {
+                return rpcHandler.handler;
+            }
+        }
+        return defaultPipeline.adaptEventHandler(eventType);
+    }
+
+    private static class RpcHandler {
+        private final int eventType;
+        private final Consumer<Trans.event_data> handler;
+
+        private RpcHandler(int eventType, Consumer<Trans.event_data> handler) {
+            this.eventType = eventType;
+            this.handler = handler;
+        }
     }
 
     /**
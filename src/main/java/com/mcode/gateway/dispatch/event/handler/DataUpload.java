@@ -6,10 +6,12 @@ import com.mcode.gateway.business.dto.EquipmentRegisterDTO;
 import com.mcode.gateway.business.service.DeviceManagementService;
 import com.mcode.gateway.configuration.ConfigCenter;
 import com.mcode.gateway.dispatch.event.AsyncEventHandler;
+import com.mcode.gateway.dispatch.event.Blocking;
 import com.mcode.gateway.dispatch.event.MapDatabase;
 import com.mcode.gateway.rpc.MqConnector;
 import com.mcode.gateway.rpc.PublishEvent;
 import com.mcode.gateway.rpc.SessionEntry;
+import com.mcode.gateway.rpc.serialization.EventEncoder;
 import com.mcode.gateway.rpc.serialization.Trans;
 import com.mcode.gateway.type.EventTypeEnum;
 import com.mcode.gateway.util.AsyncHttpClient;
@@ -23,13 +25,18 @@ import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
+@Blocking
 public class DataUpload extends AsyncEventHandler {
     @Resource
     private JedisPool jedisPool;
@@ -48,57 +55,100 @@ public class DataUpload extends AsyncEventHandler {
 
     @Override
     public void accept(Trans.event_data event) {
-        String eqId = event.getEqId();
+        acceptBatch(Collections.singletonList(event));
+    }
+
+    /**
+     * 同一批上报合并为一次节点注册校验及一次HMGET查询设备会话
+     */
+    @Override
+    public int acceptBatch(List<Trans.event_data> events) {
+        int failed = 0;
+        List<Trans.event_data> uploads = new ArrayList<>(events.size());
+        for (Trans.event_data event : events) {
+            try {
+                validEmpty("设备ID", event.getEqId());
+                validEmpty("上传uri", event.getUri());
+                validEmpty("上传消息体", event.getMsg());
+                validEmpty("设备类型", event.getEqType());
+                validEmpty("设备节点ID", event.getNodeArtifactId());
+                validEmpty("流水号", event.getSerialNumber());
+                uploads.add(event);
+            } catch (Exception e) {
+                failed++;
+                log.warn("设备上传参数异常，{}", e.getMessage());
+            }
+        }
+        if (uploads.isEmpty()) {
+            return failed;
+        }
+        //验证connector是否注册,但仍然接受上传的数据，未注册的节点每个队列只通知一次断线重连
+        Set<String> registered = registeredNodes(uploads.stream().
+                map(Trans.event_data::getNodeArtifactId).collect(Collectors.toSet()));
+        Set<String> dropped = new HashSet<>();
+        String[] uniqueIds = new String[uploads.size()];
+        for (int i = 0; i < uploads.size(); i++) {
+            Trans.event_data event = uploads.get(i);
+            String nodeArtifactId = event.getNodeArtifactId();
+            String queue = mqConnector.getQueue(event.getEqType());
+            if (!registered.contains(nodeArtifactId) && dropped.add(queue + nodeArtifactId)) {
+                reConnectPush(queue, nodeArtifactId);
+            }
+            uniqueIds[i] = MD5(event.getEqType() + event.getEqId());
+        }
+        List<String> sessions;
+        try (Jedis jedis = jedisPool.getResource()) {
+            sessions = jedis.hmget(EquipmentLogin.SESSION_MAP, uniqueIds);
+        }
+        for (int i = 0; i < uploads.size(); i++) {
+            Trans.event_data event = uploads.get(i);
+            try {
+                forward(event, uniqueIds[i], sessions.get(i));
+                //转发成功后才确认上传成功，转发异常时不回复，由connector重发
+                String serialNumber = event.getSerialNumber();
+                byte[] bytes = EventEncoder.encode(EventEncoder.builder().
+                        setType(EventTypeEnum.UPLOAD_SUCCESS.getType()).
+                        setTimeStamp(System.currentTimeMillis()).
+                        setSerialNumber(serialNumber));
+                PublishEvent publishEvent = PublishEvent.newInstance(mqConnector.getQueue(event.getEqType()), bytes, serialNumber);
+                publishEvent.addHeaders(MqConnector.CONNECTOR_ID, event.getNodeArtifactId());
+                mqConnector.publishAsync(publishEvent);
+            } catch (Exception e) {
+                failed++;
+                log.warn("设备上传数据转发异常，{}", e);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 根据设备会话中的环境配置转发到业务回调地址，会话不存在时回查DB
+     */
+    private void forward(Trans.event_data event, String uniqueId, String session) {
         String uri = event.getUri();
         String msg = event.getMsg();
-        Integer eqType = event.getEqType();
-        String nodeArtifactId = event.getNodeArtifactId();
         String serialNumber = event.getSerialNumber();
-        validEmpty("设备ID", eqId);
-        validEmpty("上传uri", uri);
-        validEmpty("上传消息体", msg);
-        validEmpty("设备类型", eqType);
-        validEmpty("设备节点ID", nodeArtifactId);
-        validEmpty("流水号", serialNumber);
         log.info("接受设备上传的指令：{}", event);
-        //验证connector是否注册,但仍然接受上传的数据
-        String queue = mqConnector.getQueue(eqType);
-        boolean register = validNodeRegister(nodeArtifactId);
-        if (!register) {
-            reConnectPush(queue, nodeArtifactId);
-        }
-        String uniqueId = MD5(eqType + eqId);
-        try (Jedis jedis = jedisPool.getResource()) {
-            String hget = jedis.hget(EquipmentLogin.SESSION_MAP, uniqueId);
-            if (!StringUtils.isEmpty(hget)) {
-                SessionEntry sessionEntry = gson.fromJson(hget, SessionEntry.class);
-                Integer profile = sessionEntry.getProfile();
-                String callbackDomain = configCenter.getProfileRegistry().get(profile);
+        if (!StringUtils.isEmpty(session)) {
+            SessionEntry sessionEntry = gson.fromJson(session, SessionEntry.class);
+            Integer profile = sessionEntry.getProfile();
+            String callbackDomain = configCenter.getProfileRegistry().get(profile);
+            String url = callbackDomain + uri;
+            AsyncHttpClient.sendPost(url, msg, new FailHandler(url, msg, serialNumber, mapDatabase));
+        } else {
+            log.warn("设备会话不在线，但能正常通信，检查数据一致");
+            EquipmentRegisterDTO equipmentRegisterDTO = new EquipmentRegisterDTO();
+            equipmentRegisterDTO.setUniqueId(uniqueId);
+            List<EquipmentRegistry> equipments = deviceService.selectEquipmentByCondition(equipmentRegisterDTO);
+            if (!equipments.isEmpty()) {
+                EquipmentRegistry registry = equipments.get(0);
+                String callbackDomain = configCenter.getProfileRegistry().get(registry.getEquipmentProfile());
                 String url = callbackDomain + uri;
                 AsyncHttpClient.sendPost(url, msg, new FailHandler(url, msg, serialNumber, mapDatabase));
             } else {
-                log.warn("设备会话不在线，但能正常通信，检查数据一致");
-                EquipmentRegisterDTO equipmentRegisterDTO = new EquipmentRegisterDTO();
-                equipmentRegisterDTO.setUniqueId(uniqueId);
-                List<EquipmentRegistry> equipments = deviceService.selectEquipmentByCondition(equipmentRegisterDTO);
-                EquipmentRegistry registry = equipments.get(0);
-                if (registry != null) {
-                    String callbackDomain = configCenter.getProfileRegistry().get(registry.getEquipmentProfile());
-                    String url = callbackDomain + uri;
-                    AsyncHttpClient.sendPost(url, msg, new FailHandler(url, msg, serialNumber, mapDatabase));
-                } else {
-                    log.warn("该设备并未注册！，{}", event);
-                }
+                log.warn("该设备并未注册！，{}", event);
             }
         }
-        //确认上传成功
-        byte[] bytes = Trans.event_data.newBuilder().
-                setType(EventTypeEnum.UPLOAD_SUCCESS.getType()).
-                setTimeStamp(System.currentTimeMillis()).
-                setSerialNumber(serialNumber).build().toByteArray();
-        PublishEvent publishEvent = new PublishEvent(mqConnector.getQueue(eqType), bytes, serialNumber);
-        publishEvent.addHeaders(MqConnector.CONNECTOR_ID, nodeArtifactId);
-        mqConnector.publishAsync(publishEvent);
     }
 
     @Override
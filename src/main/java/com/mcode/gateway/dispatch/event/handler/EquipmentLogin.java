@@ -4,22 +4,33 @@ import com.google.gson.Gson;
 import com.mcode.gateway.business.dal.EquipmentDAL;
 import com.mcode.gateway.business.dal.dao.EquipmentRegistry;
 import com.mcode.gateway.dispatch.event.AsyncEventHandler;
+import com.mcode.gateway.dispatch.event.Blocking;
 import com.mcode.gateway.rpc.MqConnector;
 import com.mcode.gateway.rpc.PublishEvent;
 import com.mcode.gateway.rpc.SessionEntry;
+import com.mcode.gateway.rpc.serialization.EventEncoder;
 import com.mcode.gateway.rpc.serialization.Trans;
 import com.mcode.gateway.type.EventTypeEnum;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
+@Blocking
 public class EquipmentLogin extends AsyncEventHandler {
     @Resource
     private EquipmentDAL equipmentDAL;
@@ -33,78 +44,136 @@ public class EquipmentLogin extends AsyncEventHandler {
 
     @Override
     public void accept(Trans.event_data event) {
+        acceptBatch(Collections.singletonList(event));
+    }
+
+    /**
+     * 同一批登录请求合并为一次节点注册校验、一次SQL IN查询及一次redis pipeline写入会话
+     */
+    @Override
+    public int acceptBatch(List<Trans.event_data> events) {
+        int failed = 0;
+        List<Trans.event_data> logins = new ArrayList<>(events.size());
+        for (Trans.event_data event : events) {
+            try {
+                validEmpty("节点ID", event.getNodeArtifactId());
+                validEmpty("设备类型", event.getEqType());
+                validEmpty("设备唯一ID", event.getEqId());
+                validEmpty("流水号", event.getSerialNumber());
+                validEmpty("socketId", event.getMsg());
+                logins.add(event);
+            } catch (Exception e) {
+                failed++;
+                log.warn("设备登陆参数异常，{}", e.getMessage());
+            }
+        }
+        if (logins.isEmpty()) {
+            return failed;
+        }
+        //验证connector是否注册，未注册的节点每个队列只通知一次断线重连
+        Set<String> registered = registeredNodes(logins.stream().
+                map(Trans.event_data::getNodeArtifactId).collect(Collectors.toSet()));
+        Set<String> dropped = new HashSet<>();
+        List<Trans.event_data> accepted = new ArrayList<>(logins.size());
+        List<String> uniqueIds = new ArrayList<>(logins.size());
+        for (Trans.event_data event : logins) {
+            String nodeArtifactId = event.getNodeArtifactId();
+            if (registered.contains(nodeArtifactId)) {
+                accepted.add(event);
+                //uniqueId规则，MD5(设备类型+设备ID)
+                uniqueIds.add(MD5(event.getEqType() + event.getEqId()));
+            } else {
+                String eqQueueName = mqConnector.getQueue(event.getEqType());
+                if (dropped.add(eqQueueName + nodeArtifactId)) {
+                    reConnectPush(eqQueueName, nodeArtifactId);
+                }
+            }
+        }
+        if (accepted.isEmpty()) {
+            return failed;
+        }
+        Map<String, EquipmentRegistry> equipments = new HashMap<>();
+        equipmentDAL.getByUniqueIdIn(new HashSet<>(uniqueIds)).
+                forEach(registry -> equipments.putIfAbsent(registry.getUniqueId(), registry));
+        List<Response<Long>> sessions = new ArrayList<>(accepted.size());
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < accepted.size(); i++) {
+                Trans.event_data event = accepted.get(i);
+                EquipmentRegistry registry = equipments.get(uniqueIds.get(i));
+                if (registry == null) {
+                    sessions.add(null);
+                    continue;
+                }
+                SessionEntry eqSession = new SessionEntry();
+                eqSession.setEqId(event.getEqId());
+                eqSession.setProfile(registry.getEquipmentProfile());
+                eqSession.setEqType(registry.getEquipmentType());
+                eqSession.setNode(event.getNodeArtifactId());
+                sessions.add(pipeline.hsetnx(SESSION_MAP, uniqueIds.get(i), gson.toJson(eqSession)));
+            }
+            pipeline.sync();
+        }
+        for (int i = 0; i < accepted.size(); i++) {
+            try {
+                loginResult(accepted.get(i), sessions.get(i));
+            } catch (Exception e) {
+                failed++;
+                log.warn("设备登陆响应异常，{}", e);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 返回登录结果
+     *
+     * @param hsetnx 写入会话的结果，设备尚未注册时为null
+     */
+    private void loginResult(Trans.event_data event, Response<Long> hsetnx) {
         Integer eqType = event.getEqType();
         String eqId = event.getEqId();
         String nodeArtifactId = event.getNodeArtifactId();
         String serialNumber = event.getSerialNumber();
-        String socketId = event.getMsg();
-        validEmpty("节点ID", nodeArtifactId);
-        validEmpty("设备类型", eqType);
-        validEmpty("设备唯一ID", eqId);
-        validEmpty("流水号", serialNumber);
-        validEmpty("socketId", socketId);
-        //验证connector是否注册
         String eqQueueName = mqConnector.getQueue(eqType);
-        boolean register = validNodeRegister(nodeArtifactId);
-        if (!register) {
-            reConnectPush(eqQueueName, nodeArtifactId);
-            return;
-        }
-        //uniqueId规则，MD5(设备类型+设备ID)
-        String md5UniqueId = MD5(eqType + eqId);
-        List<EquipmentRegistry> equipment = equipmentDAL.getByUniqueId(md5UniqueId);
         //设备尚未注册
-        if (CollectionUtils.isEmpty(equipment)) {
+        if (hsetnx == null) {
             log.warn("设备登陆失败，未注册，{}", event);
-            Trans.event_data.Builder response = Trans.event_data.newBuilder();
-            byte[] bytes = response.setMsg(socketId + ":设备登陆失败，未注册").
+            Trans.event_data.Builder response = EventEncoder.builder();
+            byte[] bytes = EventEncoder.encode(response.setMsg(event.getMsg() + ":设备登陆失败，未注册").
                     setType(EventTypeEnum.LOGIN_FAIL.getType()).
                     setNodeArtifactId(nodeArtifactId).
                     setEqId(eqId).
                     setSerialNumber(serialNumber).
-                    setTimeStamp(System.currentTimeMillis()).
-                    build().toByteArray();
+                    setTimeStamp(System.currentTimeMillis()));
             publishToConnector(bytes, eqQueueName, nodeArtifactId, serialNumber);
         } else {
-            //设备已注册
-            Long hsetnx;
-            EquipmentRegistry registry = equipment.get(0);
-            try (Jedis jedis = jedisPool.getResource()) {
-                SessionEntry eqSession = new SessionEntry();
-                eqSession.setEqId(eqId);
-                eqSession.setProfile(registry.getEquipmentProfile());
-                eqSession.setEqType(registry.getEquipmentType());
-                eqSession.setNode(nodeArtifactId);
-                hsetnx = jedis.hsetnx(SESSION_MAP, md5UniqueId, gson.toJson(eqSession));
-            }
             //有些设备长连接并不稳定，可能频繁发送登陆包，因此不做登陆校验
-            if (hsetnx == 1) {
+            if (hsetnx.get() == 1) {
                 log.info("设备类型：【{}】，ID:【{}】从【{}】节点【首次】登陆", eqType, eqId, nodeArtifactId);
             } else {
                 log.info("设备类型：【{}】，ID:【{}】从【{}】节点【重复】登陆", eqType, eqId, nodeArtifactId);
 //                validLogin(eqType, eqId, nodeArtifactId, serialNumber, eqQueueName);
             }
             //返回登陆成功事件，传入环境配置
-            Trans.event_data.Builder response = Trans.event_data.newBuilder();
-            byte[] bytes = response.setType(EventTypeEnum.LOGIN_SUCCESS.getType()).
+            Trans.event_data.Builder response = EventEncoder.builder();
+            byte[] bytes = EventEncoder.encode(response.setType(EventTypeEnum.LOGIN_SUCCESS.getType()).
                     setNodeArtifactId(nodeArtifactId).
                     setEqId(eqId).
                     setSerialNumber(serialNumber).
-                    setTimeStamp(System.currentTimeMillis()).
-                    build().toByteArray();
+                    setTimeStamp(System.currentTimeMillis()));
             publishToConnector(bytes, eqQueueName, nodeArtifactId, serialNumber);
         }
     }
 
     private void validLogin(Integer eqType, String eqId, String nodeArtifactId, String serialNumber, String eqQueueName) {
-        Trans.event_data.Builder response = Trans.event_data.newBuilder();
-        byte[] bytes = response.setMsg("设备登陆失败，设备已登陆").
+        Trans.event_data.Builder response = EventEncoder.builder();
+        byte[] bytes = EventEncoder.encode(response.setMsg("设备登陆失败，设备已登陆").
                 setType(EventTypeEnum.LOGIN_FAIL.getType()).
                 setNodeArtifactId(nodeArtifactId).
                 setEqId(eqId).
                 setSerialNumber(serialNumber).
-                setTimeStamp(System.currentTimeMillis()).
-                build().toByteArray();
+                setTimeStamp(System.currentTimeMillis()));
         publishToConnector(bytes, eqQueueName, nodeArtifactId, serialNumber);
     }
 
@@ -115,7 +184,7 @@ public class EquipmentLogin extends AsyncEventHandler {
      * @param eqQueueName 设备队列名
      */
     private void publishToConnector(byte[] bytes, String eqQueueName, String nodeArtifactId, String serialNumber) {
-        PublishEvent publishEvent = new PublishEvent(eqQueueName, bytes, serialNumber);
+        PublishEvent publishEvent = PublishEvent.newInstance(eqQueueName, bytes, serialNumber);
         publishEvent.addHeaders(MqConnector.CONNECTOR_ID, nodeArtifactId);
         mqConnector.publishAsync(publishEvent);
     }
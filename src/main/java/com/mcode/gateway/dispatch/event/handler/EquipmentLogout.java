@@ -1,8 +1,10 @@
 package com.mcode.gateway.dispatch.event.handler;
 
 import com.mcode.gateway.dispatch.event.AsyncEventHandler;
+import com.mcode.gateway.dispatch.event.Blocking;
 import com.mcode.gateway.rpc.MqConnector;
 import com.mcode.gateway.rpc.PublishEvent;
+import com.mcode.gateway.rpc.serialization.EventEncoder;
 import com.mcode.gateway.rpc.serialization.Trans;
 import com.mcode.gateway.type.EventTypeEnum;
 import lombok.extern.slf4j.Slf4j;
@@ -14,6 +16,7 @@ import javax.annotation.Resource;
 
 @Slf4j
 @Component
+@Blocking
 public class EquipmentLogout extends AsyncEventHandler {
     @Resource
     private JedisPool jedisPool;
@@ -43,13 +46,12 @@ public class EquipmentLogout extends AsyncEventHandler {
         }
         log.info("设备类型：【{}】，ID:【{}】从【{}】节点退出登陆,sessionId:【{}】",
                 eqType, eqId, nodeArtifactId, md5UniqueId);
-        Trans.event_data.Builder builder = Trans.event_data.newBuilder();
-        byte[] bytes = builder.setType(EventTypeEnum.LOGOUT_SUCCESS.getType()).
+        Trans.event_data.Builder builder = EventEncoder.builder();
+        byte[] bytes = EventEncoder.encode(builder.setType(EventTypeEnum.LOGOUT_SUCCESS.getType()).
                 setEqId(eqId).
                 setTimeStamp(System.currentTimeMillis()).
-                setSerialNumber(serialNumber).
-                build().toByteArray();
-        PublishEvent publishEvent = new PublishEvent(queue, bytes, serialNumber);
+                setSerialNumber(serialNumber));
+        PublishEvent publishEvent = PublishEvent.newInstance(queue, bytes, serialNumber);
         publishEvent.addHeaders(MqConnector.CONNECTOR_ID, nodeArtifactId);
         mqConnector.publishAsync(publishEvent);
     }
@@ -5,9 +5,11 @@ import com.mcode.gateway.configuration.CommonConfig;
 import com.mcode.gateway.configuration.ConfigCenter;
 import com.mcode.gateway.configuration.RedisConfig;
 import com.mcode.gateway.dispatch.event.AsyncEventHandler;
+import com.mcode.gateway.dispatch.event.Blocking;
 import com.mcode.gateway.rpc.MqConnector;
 import com.mcode.gateway.rpc.NodeEntry;
 import com.mcode.gateway.rpc.PublishEvent;
+import com.mcode.gateway.rpc.serialization.EventEncoder;
 import com.mcode.gateway.rpc.serialization.Trans;
 import com.mcode.gateway.type.EventTypeEnum;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +22,7 @@ import javax.annotation.Resource;
 
 @Slf4j
 @Component
+@Blocking
 public class InstanceRegister extends AsyncEventHandler {
     @Resource
     private JedisPool jedisPool;
@@ -81,14 +84,13 @@ public class InstanceRegister extends AsyncEventHandler {
 
     private void publishRegisterResult(Integer type, String msg, String nodeArtifactId,
                                        String serialNumber, String eqQueueName) {
-        byte[] bytes = Trans.event_data.newBuilder().
+        byte[] bytes = EventEncoder.encode(EventEncoder.builder().
                 setType(type).
                 setMsg(msg).
                 setNodeArtifactId(nodeArtifactId).
                 setSerialNumber(serialNumber).
-                setDispatcherId(commonConfig.getDispatcherId()).
-                build().toByteArray();
-        PublishEvent publishEvent = new PublishEvent(eqQueueName, bytes, serialNumber);
+                setDispatcherId(commonConfig.getDispatcherId()));
+        PublishEvent publishEvent = PublishEvent.newInstance(eqQueueName, bytes, serialNumber);
         publishEvent.addHeaders(MqConnector.CONNECTOR_ID, nodeArtifactId);
         mqConnector.publishAsync(publishEvent);
     }
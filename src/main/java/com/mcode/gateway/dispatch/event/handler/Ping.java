@@ -3,8 +3,10 @@ package com.mcode.gateway.dispatch.event.handler;
 import com.mcode.gateway.configuration.CommonConfig;
 import com.mcode.gateway.configuration.RedisConfig;
 import com.mcode.gateway.dispatch.event.AsyncEventHandler;
+import com.mcode.gateway.dispatch.event.Blocking;
 import com.mcode.gateway.rpc.MqConnector;
 import com.mcode.gateway.rpc.PublishEvent;
+import com.mcode.gateway.rpc.serialization.EventEncoder;
 import com.mcode.gateway.rpc.serialization.Trans;
 import com.mcode.gateway.type.EventTypeEnum;
 import com.mcode.gateway.util.IdGenerator;
@@ -12,11 +14,19 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Component
+@Blocking
 public class Ping extends AsyncEventHandler {
     @Resource
     private MqConnector mqConnector;
@@ -29,34 +39,78 @@ public class Ping extends AsyncEventHandler {
 
     @Override
     public void accept(Trans.event_data event) {
-        log.info("收到connector心跳");
-        String nodeArtifactId = event.getNodeArtifactId();
-        Integer eqType = event.getEqType();
-        validEmpty("实例ID", nodeArtifactId);
-        validEmpty("设备类型", eqType);
-        String eqQueueName = mqConnector.getQueue(eqType);
+        acceptBatch(Collections.singletonList(event));
+    }
+
+    /**
+     * 同一批心跳合并为两次redis往返：批量查询节点ttl，再批量延长存活节点的过期时间
+     */
+    @Override
+    public int acceptBatch(List<Trans.event_data> events) {
+        log.info("收到connector心跳{}条", events.size());
+        int failed = 0;
+        List<Trans.event_data> pings = new ArrayList<>(events.size());
+        for (Trans.event_data event : events) {
+            try {
+                validEmpty("实例ID", event.getNodeArtifactId());
+                validEmpty("设备类型", event.getEqType());
+                pings.add(event);
+            } catch (Exception e) {
+                failed++;
+                log.warn("心跳参数异常，{}", e.getMessage());
+            }
+        }
+        if (pings.isEmpty()) {
+            return failed;
+        }
+        Map<String, Response<Long>> ttlResponses = new HashMap<>();
+        Map<String, Long> ttls = new HashMap<>();
         try (Jedis jedis = jedisPool.getResource()) {
-            Long ttl = jedis.ttl(nodeArtifactId);
-            if (ttl == -2) {
-                log.error("该connector已过期，拒绝连接");
-                reConnectPush(eqQueueName, nodeArtifactId);
-            } else if (ttl == -1) {
-                log.error("connector不存在/connector已过期，拒绝连接");
-                reConnectPush(eqQueueName, nodeArtifactId);
-            } else {
-                log.info("心跳成功，延长节点过期时间");
-                jedis.expire(nodeArtifactId, redisConfig.getKeyExpire());
+            Pipeline ttlPipeline = jedis.pipelined();
+            for (Trans.event_data event : pings) {
+                ttlResponses.computeIfAbsent(event.getNodeArtifactId(), ttlPipeline::ttl);
             }
+            ttlPipeline.sync();
+            Pipeline expirePipeline = jedis.pipelined();
+            ttlResponses.forEach((nodeArtifactId, response) -> {
+                Long ttl = response.get();
+                ttls.put(nodeArtifactId, ttl);
+                if (ttl >= 0) {
+                    expirePipeline.expire(nodeArtifactId, redisConfig.getKeyExpire());
+                }
+            });
+            expirePipeline.sync();
+        }
+        for (Trans.event_data event : pings) {
+            try {
+                pong(event, ttls.get(event.getNodeArtifactId()));
+            } catch (Exception e) {
+                failed++;
+                log.warn("心跳响应异常，{}", e);
+            }
+        }
+        return failed;
+    }
+
+    private void pong(Trans.event_data event, Long ttl) {
+        String nodeArtifactId = event.getNodeArtifactId();
+        String eqQueueName = mqConnector.getQueue(event.getEqType());
+        if (ttl == -2) {
+            log.error("该connector已过期，拒绝连接");
+            reConnectPush(eqQueueName, nodeArtifactId);
+        } else if (ttl == -1) {
+            log.error("connector不存在/connector已过期，拒绝连接");
+            reConnectPush(eqQueueName, nodeArtifactId);
+        } else {
+            log.info("心跳成功，延长节点过期时间");
         }
         String id = String.valueOf(IdGenerator.buildDistributedId());
-        Trans.event_data.Builder eventEntry = Trans.event_data.newBuilder();
-        byte[] bytes = eventEntry.setType(EventTypeEnum.PONG.getType()).
+        Trans.event_data.Builder eventEntry = EventEncoder.builder();
+        byte[] bytes = EventEncoder.encode(eventEntry.setType(EventTypeEnum.PONG.getType()).
                 setSerialNumber(id).
-                setType(EventTypeEnum.PONG.getType()).
-                setDispatcherId(commonConfig.getDispatcherId()).
-                build().toByteArray();
+                setDispatcherId(commonConfig.getDispatcherId()));
         //pong
-        PublishEvent publishEvent = new PublishEvent(eqQueueName, bytes, id);
+        PublishEvent publishEvent = PublishEvent.newInstance(eqQueueName, bytes, id);
         publishEvent.addHeaders(MqConnector.CONNECTOR_ID, nodeArtifactId);
         mqConnector.publishAsync(publishEvent);
     }
@@ -2,6 +2,7 @@ package com.mcode.gateway.dispatch.event.handler;
 
 import com.google.gson.Gson;
 import com.mcode.gateway.Bootstrap;
+import com.mcode.gateway.dispatch.BroadcastTracker;
 import com.mcode.gateway.dispatch.event.AsyncEventHandler;
 import com.mcode.gateway.dispatch.event.MapDatabase;
 import com.mcode.gateway.rpc.MqConnector;
@@ -17,10 +18,10 @@ import redis.clients.jedis.JedisPool;
 
 import javax.annotation.Resource;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
@@ -37,9 +38,12 @@ public class ReceiveResponseAsync extends AsyncEventHandler implements Bootstrap
     private JedisPool jedisPool;
     @Resource
     private Gson gson;
-    private Map<String, PublishEvent> backupData = new HashMap<>();
+    @Resource
+    private BroadcastTracker broadcastTracker;
+    private Map<String, PublishEvent> backupData = new ConcurrentHashMap<>();
     private Queue<PublishEvent> failQueue = new LinkedBlockingQueue<>(200);
     public static final String QOS1_BACKUP = "qos1_backup";
+    private static final int MAX_NACK_RESEND = 3;
     private static ScheduledExecutorService reSendThread = Executors.newScheduledThreadPool(1, r -> {
         Thread thread = new Thread(r);
         thread.setName("rePost-exec-1");
@@ -49,9 +53,13 @@ public class ReceiveResponseAsync extends AsyncEventHandler implements Bootstrap
 
     @Override
     public void accept(Trans.event_data event) {
-        log.info("connector响应：{}", event);
         String serialNumber = event.getSerialNumber();
         validEmpty("connector端响应", serialNumber);
+        //广播指令的设备响应只做汇总
+        if (broadcastTracker.acknowledge(serialNumber, event.getEqId())) {
+            return;
+        }
+        log.info("connector响应：{}", event);
         Optional.ofNullable(backupData.get(serialNumber)).ifPresent(e -> {
             if (e.isEndurance()) {
                 mapDatabase.remove(serialNumber, QOS1_BACKUP);
@@ -66,6 +74,17 @@ public class ReceiveResponseAsync extends AsyncEventHandler implements Bootstrap
      */
     public void qos1Publish(String id, PublishEvent publishEvent) {
         backupData.put(id, publishEvent);
+        //broker拒收时无需等待timer，立即重发；多次拒收则交由timer走失败重发流程
+        //nack回调运行在publisher线程或amqp连接线程中，重发只能非阻塞入队，队列已满时同样交由timer
+        publishEvent.onConfirm(null, nackEvent -> {
+            if (nackEvent.getNackCount() <= MAX_NACK_RESEND && backupData.containsKey(nackEvent.getSerialNumber())) {
+                if (mqConnector.tryPublish(nackEvent)) {
+                    log.warn("broker拒收qos1消息，立即重发：{}", nackEvent);
+                } else {
+                    log.warn("broker拒收qos1消息，发送队列已满，等待超时重发：{}", nackEvent);
+                }
+            }
+        });
         publishEvent.addTimer(timeoutEvent -> {
             log.warn("缓存失败消息");
             String serialNumber = timeoutEvent.getSerialNumber();
@@ -77,6 +96,13 @@ public class ReceiveResponseAsync extends AsyncEventHandler implements Bootstrap
         mqConnector.publishAsync(publishEvent);
     }
 
+    /**
+     * 该流水号的qos1消息是否仍在等待connector响应
+     */
+    public boolean isPending(String serialNumber) {
+        return backupData.containsKey(serialNumber);
+    }
+
     @Override
     public Integer setEventType() {
         return EventTypeEnum.CLIENT_RESPONSE.getType();
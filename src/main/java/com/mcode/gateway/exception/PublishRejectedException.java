@@ -0,0 +1,10 @@
+package com.mcode.gateway.exception;
+
+public class PublishRejectedException extends RuntimeException {
+    public PublishRejectedException() {
+    }
+
+    public PublishRejectedException(String message) {
+        super(message);
+    }
+}
@@ -1,12 +1,14 @@
 package com.mcode.gateway.mvc;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 import com.mcode.gateway.Bootstrap;
 import com.mcode.gateway.LoadOrder;
 import com.mcode.gateway.business.dto.DeliveryInstructionDTO;
 import com.mcode.gateway.business.vo.BaseResult;
 import com.mcode.gateway.configuration.CommonConfig;
-import com.mcode.gateway.dispatch.event.EventHandlerPipeline;
 import com.mcode.gateway.dispatch.event.PipelineContainer;
 import com.mcode.gateway.dispatch.event.handler.ReceiveResponseSync;
 import com.mcode.gateway.exception.MVCException;
@@ -14,9 +16,11 @@ import com.mcode.gateway.type.QosType;
 import com.mcode.gateway.util.CommonUtil;
 import com.mcode.gateway.util.Idempotent;
 import com.mcode.gateway.util.IdempotentUtil;
-import com.mcode.gateway.util.ReflectionUtil;
 import com.mcode.gateway.util.SpringContextUtil;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.util.internal.StringUtil;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -25,10 +29,15 @@ import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -42,7 +51,10 @@ public class DispatcherProxy extends CommonUtil implements Bootstrap {
     private Gson gson;
     @Resource
     private CommonConfig commonConfig;
-    private static final Map<String, MappingEntry> HTTP_INSTRUCTION_MAPPING = new HashMap<>();
+    /**
+     * Controller方法的路由表，启动时一次构建后只读，由所有HttpDownStream实例共享
+     */
+    private volatile RouteTrie routeTrie = new RouteTrie();
     private static final String PAGE_404 = new Gson().toJson(new BaseResult(404, "无法找到该Controller"));
     private static final String RPC_MODEL = "rpc_model";
     private static final String RPC_TIMEOUT = "rpc_timeout";
@@ -51,36 +63,69 @@ public class DispatcherProxy extends CommonUtil implements Bootstrap {
     private static final String TIMEOUT = "qos_timeout";
     private static final String FILTER_REPEAT_REQUEST = "请勿并发发送相同请求";
     private static final String FILTER_LIMIT_REQUEST = "该接口在%sms内仅允许访问一次";
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
 
     @SneakyThrows
     @Override
     public void init() {
         log.info("load http protocol mvc dispatcher");
-        SpringContextUtil.getContext().getBeansWithAnnotation(RestManager.class).forEach((beanName, object) -> {
+        RouteTrie routes = new RouteTrie();
+        LocalVariableTableParameterNameDiscoverer discoverer = new LocalVariableTableParameterNameDiscoverer();
+        //请求DTO使用预编译的TypeAdapter绑定及校验，嵌套的DTO（如批量推送中的指令）同样生效
+        GsonBuilder builder = gson.newBuilder();
+        for (DtoTypeAdapter<?> adapter : SpringContextUtil.getContext().getBeansOfType(DtoTypeAdapter.class).values()) {
+            builder.registerTypeAdapter(adapter.getType(), adapter);
+            NotNullValidator.register(adapter);
+        }
+        Gson bindGson = builder.create();
+        for (Object object : SpringContextUtil.getContext().getBeansWithAnnotation(RestManager.class).values()) {
             Class<?> cls = object.getClass();
-            Method[] methods = cls.getMethods();
             RestManager manager;
-            if ((manager = cls.getAnnotation(RestManager.class)) != null) {
-                for (Method method : methods) {
-                    Route route;
-                    if ((route = method.getAnnotation(Route.class)) != null) {
-                        String uriKey = manager.value() + route.value() + route.method().getValue();
-                        HTTP_INSTRUCTION_MAPPING.put(uriKey, new MappingEntry(object, method));
+            if ((manager = cls.getAnnotation(RestManager.class)) == null) {
+                continue;
+            }
+            for (Method method : cls.getMethods()) {
+                Route route;
+                if ((route = method.getAnnotation(Route.class)) != null) {
+                    //参数名、参数转换器、请求体的TypeAdapter在启动时解析一次
+                    Class<?>[] parameterTypes = method.getParameterTypes();
+                    String[] parameterNames = Optional.ofNullable(discoverer.getParameterNames(method)).
+                            orElse(new String[parameterTypes.length]);
+                    @SuppressWarnings("unchecked")
+                    Function<String, Object>[] converters = new Function[parameterTypes.length];
+                    for (int i = 0; i < parameterTypes.length; i++) {
+                        converters[i] = converter(parameterTypes[i]);
                     }
+                    routes.add(io.vertx.core.http.HttpMethod.valueOf(route.method().getValue()),
+                            manager.value() + route.value(),
+                            new MappingEntry(object, method, parameterNames, converters,
+                                    parameterTypes.length == 0 ? null : bindGson.getAdapter(parameterTypes[0])));
                 }
             }
-        });
+        }
+        routeTrie = routes;
     }
 
-    public String routingHTTP(HttpServerRequest request, String requestBody) {
-        return Optional.ofNullable(request.uri()).
-                map(path -> HTTP_INSTRUCTION_MAPPING.get(path.substring(0, path.indexOf("?")) +
-                        request.method().name())).
+    /**
+     * 路由HTTP请求，多个HttpDownStream实例的event loop并发调用，不能持有请求相关的可变状态
+     * Controller返回CompletableFuture时（如rpc模式的指令推送），在future完成后才有响应结果，不阻塞event loop
+     *
+     * @param requestBody 请求体，由预编译的TypeAdapter直接从字节流绑定到DTO，不转换为字符串
+     * @return 序列化后的响应
+     */
+    public CompletableFuture<String> routingHTTP(HttpServerRequest request, Buffer requestBody) {
+        return Optional.ofNullable(request.path()).
+                map(path -> routeTrie.get(request.method(), path)).
                 map(mappingEntry -> {
-                    Method invokeMethod = mappingEntry.getMethod();
                     //幂等检查
                     Idempotent idempotent;
-                    if ((idempotent = invokeMethod.getAnnotation(Idempotent.class)) != null) {
+                    if ((idempotent = mappingEntry.getIdempotent()) != null) {
                         long timeout = idempotent.timeout();
                         Idempotent.Type model = idempotent.model();
                         switch (model) {
@@ -88,7 +133,7 @@ public class DispatcherProxy extends CommonUtil implements Bootstrap {
                                 if (idempotentUtil.doIdempotent(request.uri() +
                                         request.method() +
                                         request.remoteAddress() +
-                                        requestBody, timeout)) {
+                                        digest(requestBody), timeout)) {
                                     return new BaseResult(FILTER_REPEAT_REQUEST);
                                 }
                                 break;
@@ -102,32 +147,25 @@ public class DispatcherProxy extends CommonUtil implements Bootstrap {
                         }
                     }
                     //无参数
-                    Class[] parameterTypes = invokeMethod.getParameterTypes();
+                    Class<?>[] parameterTypes = mappingEntry.getParameterTypes();
                     if (parameterTypes.length == 0) {
-                        return ReflectionUtil.invokeMethod(
-                                mappingEntry.getObject(),
-                                invokeMethod);
+                        return mappingEntry.invoke();
                     }
                     //GET
-                    if (request.method().name().equals(HttpMethod.GET.getValue())) {
-                        Object[] param = Stream.generate(() -> null).
-                                limit(parameterTypes.length).
-                                toArray();
-                        String[] parameterNames = new LocalVariableTableParameterNameDiscoverer().getParameterNames(invokeMethod);
+                    if (request.method() == io.vertx.core.http.HttpMethod.GET) {
+                        String[] parameterNames = mappingEntry.getParameterNames();
+                        Function<String, Object>[] converters = mappingEntry.getConverters();
+                        Object[] param = new Object[parameterTypes.length];
                         for (int i = 0; i < param.length; i++) {
-                            String temp = request.getParam(parameterNames[i]);
+                            String temp = parameterNames[i] == null ? null : request.getParam(parameterNames[i]);
                             if (StringUtils.isNotEmpty(temp)) {
-                                param[i] = convert(parameterTypes[i], temp);
+                                param[i] = converters[i].apply(temp);
                             }
                         }
-                        return ReflectionUtil.invokeMethod(
-                                mappingEntry.getObject(),
-                                invokeMethod, param);
+                        return mappingEntry.invoke(param);
                     }
                     //POST PUT DELETE
-                    Object param = gson.fromJson(requestBody.
-                            replace("\n", "").
-                            replace("\t", ""), parameterTypes[0]);
+                    Object param = bindBody(mappingEntry, requestBody);
                     if (param == null) {
                         throw new MVCException("request body不能为空");
                     }
@@ -158,30 +196,64 @@ public class DispatcherProxy extends CommonUtil implements Bootstrap {
                         //根据是否开启RPC模式，动态添加同步/异步 响应事件处理器
                         ackDynamicPipeline(serialId, rpc);
                     }
-                    return ReflectionUtil.invokeMethod(
-                            mappingEntry.getObject(),
-                            invokeMethod,
-                            param);
+                    return mappingEntry.invoke(param);
                 }).
-                map(baseResult -> gson.toJson(baseResult)).
+                map(this::toJson).
                 orElseGet(() -> {
-                    log.warn("找不到该URI的处理器：{},参数：{}", request.uri() + request.method().name(), requestBody);
-                    return PAGE_404;
+                    log.warn("找不到该URI的处理器：{},参数：{}", request.uri() + request.method().name(),
+                            requestBody.toString(StandardCharsets.UTF_8.name()));
+                    return CompletableFuture.completedFuture(PAGE_404);
                 });
     }
 
-    private Object convert(Class<?> parameterType, String temp) {
+    /**
+     * 请求体的md5摘要，直接读取Buffer底层字节，用作防重复提交的键，避免整个请求体转换为字符串
+     */
+    private static String digest(Buffer requestBody) {
+        MessageDigest md5 = MD5.get();
+        md5.update(requestBody.getByteBuf().nioBuffer());
+        return ByteBufUtil.hexDump(md5.digest());
+    }
+
+    /**
+     * 以JsonReader流式读取请求体绑定DTO，空请求体返回null
+     */
+    private Object bindBody(MappingEntry mappingEntry, Buffer requestBody) {
+        if (requestBody.length() == 0) {
+            return null;
+        }
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteBufInputStream(requestBody.getByteBuf().duplicate()), StandardCharsets.UTF_8))) {
+            reader.setLenient(true);
+            return mappingEntry.getBodyAdapter().read(reader);
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            throw new MVCException("request body格式错误：" + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<String> toJson(Object result) {
+        if (result instanceof CompletableFuture) {
+            return ((CompletableFuture<Object>) result).thenApply(gson::toJson);
+        }
+        return CompletableFuture.completedFuture(gson.toJson(result));
+    }
+
+    /**
+     * query参数的类型转换器
+     */
+    private static Function<String, Object> converter(Class<?> parameterType) {
         String lowerCase = parameterType.getTypeName();
         if (lowerCase.equals(TypeName.INTEGER.getName()) || lowerCase.equals(TypeName.INT.getName())) {
-            return Integer.valueOf(temp);
+            return Integer::valueOf;
         } else if (lowerCase.equals(TypeName.LONGABLE.getName()) || lowerCase.equals(TypeName.LONG.getName())) {
-            return Long.valueOf(temp);
+            return Long::valueOf;
         } else if (lowerCase.equals(TypeName.BOOLEANABLE.getName()) || lowerCase.equals(TypeName.BOOLEAN.getName())) {
-            return Boolean.valueOf(temp);
+            return Boolean::valueOf;
         } else if (lowerCase.equals(TypeName.FLOATABLE.getName()) || lowerCase.equals(TypeName.FLOAT.getName())) {
-            return Float.valueOf(temp);
+            return Float::valueOf;
         } else {
-            return temp;
+            return temp -> temp;
         }
     }
 
@@ -210,12 +282,9 @@ public class DispatcherProxy extends CommonUtil implements Bootstrap {
 
     private void ackDynamicPipeline(String requestId, boolean isRpc) {
         if (isRpc) {
-            PipelineContainer pipelineContainer = SpringContextUtil.getBean(PipelineContainer.class);
-            EventHandlerPipeline defaultPipeline = pipelineContainer.getDefaultPipeline();
-            EventHandlerPipeline thisPipeline = (EventHandlerPipeline) defaultPipeline.clone();
-            //覆盖默认pipeline的异步连接响应处理器
-            thisPipeline.addEventHandler(SpringContextUtil.getBean(ReceiveResponseSync.class));
-            pipelineContainer.addPipeline(requestId, thisPipeline);
+            //覆盖默认pipeline的异步连接响应处理器，仅对该流水号生效
+            SpringContextUtil.getBean(PipelineContainer.class).
+                    registerRpcHandler(requestId, SpringContextUtil.getBean(ReceiveResponseSync.class));
         }
     }
 
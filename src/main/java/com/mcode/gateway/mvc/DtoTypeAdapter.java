@@ -0,0 +1,113 @@
+package com.mcode.gateway.mvc;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.mcode.gateway.exception.NullParamException;
+
+import java.io.IOException;
+
+/**
+ * 请求DTO的预编译TypeAdapter
+ * 按字段名直接调用setter绑定请求体，不经过Gson的反射适配器；{@link NotNull}字段的校验同样直接调用getter，
+ * 由{@link NotNullValidator}对该DTO类型委托给{@link #validate(Object)}
+ * 实现类注册为spring bean，由{@link DispatcherProxy}在启动时收集
+ * 字段的读取规则与Gson默认适配器一致：null值及未知字段跳过，数字字段接受字符串形式的数字
+ */
+public abstract class DtoTypeAdapter<T> extends TypeAdapter<T> {
+    private final Class<T> type;
+
+    protected DtoTypeAdapter(Class<T> type) {
+        this.type = type;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        T dto = create();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else if (!readField(dto, name, in)) {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return dto;
+    }
+
+    @Override
+    public void write(JsonWriter out, T dto) throws IOException {
+        if (dto == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        writeFields(out, dto);
+        out.endObject();
+    }
+
+    /**
+     * 创建空的DTO
+     */
+    protected abstract T create();
+
+    /**
+     * 读取一个非null字段
+     *
+     * @return 未知字段返回false，由调用方跳过
+     */
+    protected abstract boolean readField(T dto, String name, JsonReader in) throws IOException;
+
+    /**
+     * 写出所有字段，null字段不写出
+     */
+    protected abstract void writeFields(JsonWriter out, T dto) throws IOException;
+
+    /**
+     * 校验标注了{@link NotNull}的字段，为null或空白字符串时抛出{@link NullParamException}
+     */
+    public abstract void validate(T dto);
+
+    protected static void notNull(String fieldName, Object value) {
+        if (value == null || value instanceof String && ((String) value).trim().isEmpty()) {
+            throw new NullParamException(fieldName);
+        }
+    }
+
+    protected static String nextString(JsonReader in) throws IOException {
+        return in.peek() == JsonToken.BOOLEAN ? Boolean.toString(in.nextBoolean()) : in.nextString();
+    }
+
+    protected static Boolean nextBoolean(JsonReader in) throws IOException {
+        return in.peek() == JsonToken.STRING ? Boolean.valueOf(in.nextString()) : in.nextBoolean();
+    }
+
+    protected static void writeField(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    protected static void writeField(JsonWriter out, String name, Number value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    protected static void writeField(JsonWriter out, String name, Boolean value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+}
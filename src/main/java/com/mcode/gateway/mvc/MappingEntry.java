@@ -1,18 +1,68 @@
 package com.mcode.gateway.mvc;
 
+import com.google.gson.TypeAdapter;
+import com.mcode.gateway.util.Idempotent;
 import lombok.Getter;
 import lombok.ToString;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.function.Function;
 
-@ToString
+/**
+ * 预编译的Controller方法
+ * 启动时解析好参数名、参数转换器、请求体的TypeAdapter及幂等配置，并将方法转换为绑定了Controller实例的MethodHandle，
+ * 请求时只按下标取用，不再反射
+ */
+@ToString(of = {"object", "method"})
 @Getter
 public class MappingEntry {
-    private Object object;
-    private Method method;
+    private final Object object;
+    private final Method method;
+    private final Class<?>[] parameterTypes;
+    /**
+     * GET请求按参数名取query参数
+     */
+    private final String[] parameterNames;
+    private final Function<String, Object>[] converters;
+    /**
+     * 未标注时为null
+     */
+    private final Idempotent idempotent;
+    /**
+     * POST/PUT/DELETE请求体到第一个参数的绑定，无参数时为null
+     */
+    private final TypeAdapter<?> bodyAdapter;
+    private final MethodHandle invoker;
 
-    public MappingEntry(Object object, Method method) {
+    public MappingEntry(Object object, Method method, String[] parameterNames,
+                        Function<String, Object>[] converters, TypeAdapter<?> bodyAdapter) throws IllegalAccessException {
         this.object = object;
         this.method = method;
+        this.parameterTypes = method.getParameterTypes();
+        this.parameterNames = parameterNames;
+        this.converters = converters;
+        this.idempotent = method.getAnnotation(Idempotent.class);
+        this.bodyAdapter = bodyAdapter;
+        method.setAccessible(true);
+        this.invoker = MethodHandles.lookup().unreflect(method).
+                bindTo(object).
+                asSpreader(Object[].class, parameterTypes.length).
+                asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
+    /**
+     * 调用Controller方法，业务异常原样抛出
+     */
+    public Object invoke(Object... args) {
+        try {
+            return (Object) invoker.invokeExact(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
     }
 }
@@ -0,0 +1,91 @@
+package com.mcode.gateway.mvc;
+
+import com.mcode.gateway.exception.NullParamException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DTO中{@link NotNull}字段的校验器
+ * 每个DTO类型首次校验时解析一次标注的字段，并转换为字段读取的MethodHandle，之后的校验不再反射；
+ * 注册了{@link DtoTypeAdapter}的DTO类型直接委托给adapter的getter校验
+ */
+public final class NotNullValidator {
+    private static final Map<Class<?>, DtoTypeAdapter<?>> ADAPTERS = new ConcurrentHashMap<>();
+    private static final ClassValue<NotNullValidator> VALIDATORS = new ClassValue<NotNullValidator>() {
+        @Override
+        protected NotNullValidator computeValue(Class<?> type) {
+            DtoTypeAdapter<?> adapter = ADAPTERS.get(type);
+            return adapter != null ? new NotNullValidator(adapter) : new NotNullValidator(type);
+        }
+    };
+    private final String[] fieldNames;
+    private final MethodHandle[] getters;
+    private final DtoTypeAdapter<Object> adapter;
+
+    @SuppressWarnings("unchecked")
+    private NotNullValidator(DtoTypeAdapter<?> adapter) {
+        this.fieldNames = new String[0];
+        this.getters = new MethodHandle[0];
+        this.adapter = (DtoTypeAdapter<Object>) adapter;
+    }
+
+    private NotNullValidator(Class<?> type) {
+        this.adapter = null;
+        List<String> names = new ArrayList<>();
+        List<MethodHandle> handles = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if ((modifiers & Modifier.STATIC) == 0 && (modifiers & Modifier.FINAL) == 0 &&
+                    field.isAnnotationPresent(NotNull.class)) {
+                field.setAccessible(true);
+                try {
+                    handles.add(MethodHandles.lookup().unreflectGetter(field));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("无法读取字段" + field, e);
+                }
+                names.add(field.getName());
+            }
+        }
+        this.fieldNames = names.toArray(new String[0]);
+        this.getters = handles.toArray(new MethodHandle[0]);
+    }
+
+    /**
+     * 注册DTO的预编译adapter，需在该类型首次校验前调用，由{@link DispatcherProxy}启动时注册
+     */
+    public static void register(DtoTypeAdapter<?> adapter) {
+        ADAPTERS.put(adapter.getType(), adapter);
+    }
+
+    public static NotNullValidator of(Class<?> type) {
+        return VALIDATORS.get(type);
+    }
+
+    /**
+     * 标注了{@link NotNull}的字段为null或空白字符串时抛出{@link NullParamException}
+     */
+    public void validate(Object dto) {
+        if (adapter != null) {
+            adapter.validate(dto);
+            return;
+        }
+        for (int i = 0; i < getters.length; i++) {
+            Object value;
+            try {
+                value = getters[i].invoke(dto);
+            } catch (Throwable e) {
+                throw new IllegalStateException("读取字段" + fieldNames[i] + "失败", e);
+            }
+            if (value == null || value instanceof String && ((String) value).trim().isEmpty()) {
+                throw new NullParamException(fieldNames[i]);
+            }
+        }
+    }
+}
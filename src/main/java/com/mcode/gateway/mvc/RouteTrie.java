@@ -0,0 +1,62 @@
+package com.mcode.gateway.mvc;
+
+import io.vertx.core.http.HttpMethod;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 路由表，每种HTTP method一棵按路径段划分的前缀树
+ * 启动时构建，之后只读，可被多个event loop并发查找
+ */
+public class RouteTrie {
+    private final Map<HttpMethod, Node> roots = new EnumMap<>(HttpMethod.class);
+
+    /**
+     * 注册路由，重复注册时后者覆盖前者
+     */
+    public void add(HttpMethod method, String path, MappingEntry entry) {
+        Node node = roots.computeIfAbsent(method, m -> new Node());
+        int start = 0;
+        while ((start = nextSegment(path, start)) < path.length()) {
+            int end = segmentEnd(path, start);
+            node = node.children.computeIfAbsent(path.substring(start, end), s -> new Node());
+            start = end;
+        }
+        node.entry = entry;
+    }
+
+    /**
+     * 查找路由，连续的/视为一个
+     *
+     * @return 找不到时返回null
+     */
+    public MappingEntry get(HttpMethod method, String path) {
+        Node node = roots.get(method);
+        int start = 0;
+        while (node != null && (start = nextSegment(path, start)) < path.length()) {
+            int end = segmentEnd(path, start);
+            node = node.children.get(path.substring(start, end));
+            start = end;
+        }
+        return node == null ? null : node.entry;
+    }
+
+    private static int nextSegment(String path, int from) {
+        while (from < path.length() && path.charAt(from) == '/') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int segmentEnd(String path, int start) {
+        int end = path.indexOf('/', start);
+        return end < 0 ? path.length() : end;
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>(4);
+        private MappingEntry entry;
+    }
+}
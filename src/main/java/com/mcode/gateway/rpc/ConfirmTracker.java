@@ -0,0 +1,91 @@
+package com.mcode.gateway.rpc;
+
+import com.rabbitmq.client.ConfirmListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 生产者channel的publisher confirm追踪器，一个channel对应一个追踪器
+ * 发送前以channel的publishSeqNo登记消息，broker异步回执ack/nack（multiple=true时为批量回执），
+ * 回执后回调{@link PublishEvent#confirmed(boolean)}，不使用waitForConfirms，避免每条消息一次往返
+ * 只登记设置了回执回调的消息，其余消息的回执直接忽略
+ */
+@Slf4j
+public class ConfirmTracker implements ConfirmListener {
+    private final ConcurrentNavigableMap<Long, PublishEvent> outstanding = new ConcurrentSkipListMap<>();
+
+    /**
+     * 登记待确认消息，需在basicPublish之前调用
+     *
+     * @param seqNo channel.getNextPublishSeqNo()
+     * @param event 消息
+     */
+    public void track(long seqNo, PublishEvent event) {
+        outstanding.put(seqNo, event);
+    }
+
+    /**
+     * basicPublish失败时撤销登记，之后由调用方以{@link PublishEvent#confirmed(boolean)}立即回调nack
+     */
+    public void untrack(long seqNo) {
+        outstanding.remove(seqNo);
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        confirm(deliveryTag, multiple, true);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        log.warn("broker拒收消息，deliveryTag:{},multiple:{}", deliveryTag, multiple);
+        confirm(deliveryTag, multiple, false);
+    }
+
+    /**
+     * channel关闭后未确认的消息不会再有回执，全部视为nack
+     */
+    public void failAll() {
+        Map.Entry<Long, PublishEvent> entry;
+        while ((entry = outstanding.pollFirstEntry()) != null) {
+            callback(entry.getValue(), false);
+        }
+    }
+
+    /**
+     * 未确认消息数
+     */
+    public int outstandingCount() {
+        return outstanding.size();
+    }
+
+    private void confirm(long deliveryTag, boolean multiple, boolean ack) {
+        if (multiple) {
+            NavigableMap<Long, PublishEvent> confirmed = outstanding.headMap(deliveryTag, true);
+            Map.Entry<Long, PublishEvent> entry;
+            while ((entry = confirmed.pollFirstEntry()) != null) {
+                callback(entry.getValue(), ack);
+            }
+        } else {
+            PublishEvent event = outstanding.remove(deliveryTag);
+            if (event != null) {
+                callback(event, ack);
+            }
+        }
+    }
+
+    /**
+     * 回调运行在connection的回调线程中，异常不能抛出，否则会导致channel被关闭
+     */
+    private void callback(PublishEvent event, boolean ack) {
+        try {
+            event.confirmed(ack);
+        } catch (Exception e) {
+            log.warn("publisher confirm回调异常，{}", e);
+        }
+    }
+}
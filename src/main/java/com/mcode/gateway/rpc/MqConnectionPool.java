@@ -0,0 +1,220 @@
+package com.mcode.gateway.rpc;
+
+import com.mcode.gateway.configuration.MqConfig;
+import com.rabbitmq.client.Address;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * rabbitMq连接池
+ * 一个connection对应一条tcp连接及broker端的一个进程，连接分为消费者连接和生产者连接两组，channel按下标分散到组内的connection上，
+ * 避免单连接的吞吐瓶颈；broker的流控（connection.blocked）作用于整个connection，两组分开后下行的发送被限流时不会阻塞上行消费
+ * 配置多个broker地址时，第i个connection优先连接第i%n个地址，其余地址作为故障转移备选
+ * 每个connection独立自动重连，互不影响
+ */
+@Slf4j
+public class MqConnectionPool {
+    private final MqConfig mqConfig;
+    private final Member[] members;
+    /**
+     * 前consumers个connection为消费者连接，其余为生产者连接
+     */
+    private final int consumers;
+
+    public MqConnectionPool(MqConfig mqConfig) {
+        this.mqConfig = mqConfig;
+        //至少一个消费者连接和一个生产者连接
+        int size = Math.max(2, mqConfig.getConnectionCount());
+        this.consumers = (size + 1) / 2;
+        this.members = new Member[size];
+        for (int i = 0; i < size; i++) {
+            members[i] = new Member(i + 1);
+        }
+    }
+
+    /**
+     * 建立所有尚未建立的连接
+     * rabbitMq的自动重连不会在client初始化时生效，任一连接失败时抛出异常，由调用方重试
+     */
+    public void connect() throws IOException, TimeoutException {
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.useNio();
+        //nio及回调线程中的投递不能阻塞在发送队列上
+        factory.setThreadFactory(NonBlockingThreads.wrap(Executors.defaultThreadFactory()));
+        factory.setAutomaticRecoveryEnabled(true);
+        factory.setNetworkRecoveryInterval(5000);
+        factory.setUsername(mqConfig.getMqUserName());
+        factory.setPassword(mqConfig.getMqPwd());
+        factory.setVirtualHost(StringUtils.isBlank(mqConfig.getVirtualHost()) ? "/" : mqConfig.getVirtualHost());
+        List<Address> addresses = addresses();
+        for (int i = 0; i < members.length; i++) {
+            if (members[i].connection == null) {
+                members[i].open(factory, rotate(addresses, i));
+            }
+        }
+    }
+
+    /**
+     * 按下标取消费者连接，下标超出消费者连接数时取模
+     */
+    public Member consumer(int shard) {
+        return members[(shard & Integer.MAX_VALUE) % consumers];
+    }
+
+    /**
+     * 按下标取生产者连接，下标超出生产者连接数时取模
+     */
+    public Member producer(int shard) {
+        return members[consumers + (shard & Integer.MAX_VALUE) % (members.length - consumers)];
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    /**
+     * 是否所有连接均已建立
+     */
+    public boolean isConnected() {
+        for (Member member : members) {
+            if (!member.connected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 各个connection的状态及收发计数
+     */
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> stats = new ArrayList<>(members.length);
+        for (Member member : members) {
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("index", member.index);
+            stat.put("role", member.index <= consumers ? "consumer" : "producer");
+            stat.put("address", member.connection == null ? null :
+                    member.connection.getAddress().getHostAddress() + ":" + member.connection.getPort());
+            stat.put("connected", member.connected);
+            stat.put("channels", member.channels.get());
+            stat.put("published", member.published.sum());
+            stat.put("consumed", member.consumed.sum());
+            stat.put("shutdowns", member.shutdowns.sum());
+            stat.put("recoveries", member.recoveries.sum());
+            stats.add(stat);
+        }
+        return stats;
+    }
+
+    /**
+     * mqHosts为空时使用mqHost:mqPort
+     */
+    private List<Address> addresses() {
+        List<Address> addresses = new ArrayList<>();
+        List<String> hosts = mqConfig.getMqHosts() == null ? new ArrayList<>() : mqConfig.getMqHosts();
+        for (String host : hosts) {
+            if (StringUtils.isNotBlank(host)) {
+                Address address = Address.parseAddress(host.trim());
+                addresses.add(address.getPort() == -1 ? new Address(address.getHost(), mqConfig.getMqPort()) : address);
+            }
+        }
+        if (addresses.isEmpty()) {
+            addresses.add(new Address(mqConfig.getMqHost(), mqConfig.getMqPort()));
+        }
+        return addresses;
+    }
+
+    private List<Address> rotate(List<Address> addresses, int offset) {
+        List<Address> rotated = new ArrayList<>(addresses.size());
+        for (int i = 0; i < addresses.size(); i++) {
+            rotated.add(addresses.get((i + offset) % addresses.size()));
+        }
+        return rotated;
+    }
+
+    /**
+     * 连接池中的一个connection及其计数
+     */
+    public static class Member {
+        private final int index;
+        private volatile Connection connection;
+        private volatile boolean connected = false;
+        private final AtomicInteger channels = new AtomicInteger();
+        private final LongAdder published = new LongAdder();
+        private final LongAdder consumed = new LongAdder();
+        private final LongAdder shutdowns = new LongAdder();
+        private final LongAdder recoveries = new LongAdder();
+
+        private Member(int index) {
+            this.index = index;
+        }
+
+        private void open(ConnectionFactory factory, List<Address> addresses) throws IOException, TimeoutException {
+            Connection newConnection = factory.newConnection(addresses, "dispatcher-" + index);
+            //adding a ShutdownListener to an object that is already closed will fire the listener immediately
+            newConnection.addShutdownListener(e -> {
+                log.error("rabbitMq连接{}断开：{} \r\n location:{}", index,
+                        e.getMessage(), e.getReason().protocolMethodName());
+                connected = false;
+                shutdowns.increment();
+            });
+            ((Recoverable) newConnection).addRecoveryListener(new RecoveryListener() {
+                @Override
+                public void handleRecovery(Recoverable recoverable) {
+                    log.warn("rabbitMq连接{}完成自动连接", index);
+                    connected = true;
+                    recoveries.increment();
+                }
+
+                @Override
+                public void handleRecoveryStarted(Recoverable recoverable) {
+                    log.warn("rabbitMq连接{}准备开始重连", index);
+                }
+            });
+            connection = newConnection;
+            connected = true;
+            log.info("rabbitMq连接{}已建立：{}", index, newConnection.getAddress());
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        /**
+         * 登记在本connection上创建的channel
+         */
+        public void channelOpened() {
+            channels.incrementAndGet();
+        }
+
+        public void channelClosed() {
+            channels.decrementAndGet();
+        }
+
+        public void published() {
+            published.increment();
+        }
+
+        public void consumed() {
+            consumed.increment();
+        }
+    }
+}
@@ -3,20 +3,21 @@ package com.mcode.gateway.rpc;
 import com.mcode.gateway.Bootstrap;
 import com.mcode.gateway.LoadOrder;
 import com.mcode.gateway.configuration.CommonConfig;
+import com.mcode.gateway.configuration.ConfigCenter;
 import com.mcode.gateway.configuration.MqConfig;
 import com.mcode.gateway.dispatch.CallbackManager;
 import com.mcode.gateway.dispatch.ClusterManager;
+import com.mcode.gateway.dispatch.MqEventUpStream;
 import com.mcode.gateway.dispatch.event.EventHandler;
+import com.mcode.gateway.dispatch.event.MapDatabase;
+import com.mcode.gateway.exception.PublishRejectedException;
+import com.mcode.gateway.rpc.serialization.EventFrame;
+import com.mcode.gateway.rpc.serialization.PayloadCompressor;
 import com.mcode.gateway.rpc.serialization.Trans;
+import com.mcode.gateway.type.EventTypeEnum;
+import com.mcode.gateway.util.IdGenerator;
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.DefaultConsumer;
-import com.rabbitmq.client.Envelope;
-import com.rabbitmq.client.Recoverable;
-import com.rabbitmq.client.RecoveryListener;
-import com.rabbitmq.client.ShutdownSignalException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
@@ -24,18 +25,22 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Resource;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -48,81 +53,188 @@ public class MqConnector implements Bootstrap {
     @Resource
     private ClusterManager clusterManager;
     @Resource
+    private MqEventUpStream mqEventUpStream;
+    @Resource
     private CallbackManager callbackManager;
-    private Queue<PublishEvent> publishQueue = new ArrayBlockingQueue<>(100);
-    private ExecutorService publisherFactory = new ThreadPoolExecutor(1,
-            1,
-            0,
-            TimeUnit.MILLISECONDS,
-            new LinkedBlockingDeque<>(200), r -> {
+    @Resource
+    private ConfigCenter configCenter;
+    @Resource
+    private PayloadCompressor payloadCompressor;
+    private ExecutorService publisherFactory;
+    private PublishWorker[] publishWorkers;
+    private ProducerChannelPool channelPool;
+    @Resource
+    private MapDatabase mapDatabase;
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder spilledCount = new LongAdder();
+    private final LongAdder localRoutedCount = new LongAdder();
+    private final LongAdder remoteRoutedCount = new LongAdder();
+    private final LongAdder publishedRoutedCount = new LongAdder();
+    private long replayedCount = 0;
+    private List<UpstreamConsumer> upstreamConsumers = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService mqScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
         Thread thread = new Thread(r);
-        thread.setName("publish-exec-1");
+        thread.setName("mq-scheduler-1");
+        thread.setDaemon(true);
         return thread;
     });
-    private static Connection connection;
-    private static String QUEUE_MODEL = "direct";
-    private final Object lock = new Object();
+    /**
+     * SPILL策略下待落盘的消息
+     */
+    private final Queue<PublishEvent> spillBuffer = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService spillThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("publish-spill-1");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final String PUBLISH_SPILL = "publish_spill";
+    private static final long SPILL_FLUSH_INTERVAL = 100;
+    private static final long SPILL_REPLAY_INTERVAL = 5000;
+    private static final long ACK_FLUSH_INTERVAL = 100;
+    private static final long FLOW_CHECK_INTERVAL = 1000;
+    private MqConnectionPool connectionPool;
     private static final String EQUIPMENT_QUEUE = "equipment_type_";
     public static final String DISPATCHER_ID = "dispatcherId";
     public static final String CONNECTOR_ID = "connectorId";
+    /**
+     * 广播消息头，值为true时connector将消息分发给本节点该类型的所有在线设备
+     */
+    public static final String BROADCAST = "broadcast";
+    /**
+     * 广播消息头，值为逗号分隔的目标设备eqId，connector只分发给这些设备
+     */
+    public static final String TARGETS = "targets";
+    /**
+     * 批量消息头，值为信封内的消息条数，connector需按event_batch解包
+     */
+    public static final String BATCH_SIZE = "batchSize";
     private static Map<Integer, String> queueMap = new ConcurrentHashMap<>();
-    private static volatile boolean hasConnected = false;
 
-    private void connectRabbitMq() throws IOException, TimeoutException {
-        ConnectionFactory factory = new ConnectionFactory();
-        factory.useNio();
-        factory.setAutomaticRecoveryEnabled(true);
-        factory.setNetworkRecoveryInterval(5000);
-        factory.setHost(mqConfig.getMqHost());
-        factory.setPort(mqConfig.getMqPort());
-        factory.setUsername(mqConfig.getMqUserName());
-        factory.setPassword(mqConfig.getMqPwd());
-        factory.setVirtualHost(StringUtils.isBlank(mqConfig.getVirtualHost()) ? "/" : mqConfig.getVirtualHost());
-        connection = factory.newConnection();
-        //adding a ShutdownListener to an object that is already closed will fire the listener immediately
-        connection.addShutdownListener(e -> {
-            log.error("rabbitMq断开连接：{} \r\n location:{}",
-                    Arrays.toString(e.getStackTrace()), e.getReason().protocolMethodName());
-            hasConnected = false;
-        });
-        Recoverable recoverable = (Recoverable) MqConnector.connection;
-        recoverable.addRecoveryListener(new RecoveryListener() {
-            @Override
-            public void handleRecovery(Recoverable recoverable) {
-                log.warn("rabbitMq完成自动连接");
-                hasConnected = true;
-            }
+    private void registryConsumer() throws IOException {
+        String upQueueName = mqConfig.getUpQueueName();
+        String controlQueueName = mqConfig.getControlQueueName();
+        int dataConsumers = mqConfig.getConsumerCount();
+        //控制队列的消费者独占channel，数据队列积压时心跳、注册、登录消息仍能及时被消费
+        int controlConsumers = StringUtils.isBlank(controlQueueName) ? 0 : mqConfig.getControlConsumerCount();
+        int prefetch = mqConfig.getPrefetchCount();
+        //批量ack的条数必须小于prefetch，否则broker停止推送后剩余的消息只能等定时ack
+        int ackBatchSize = Math.max(1, Math.min(mqConfig.getAckBatchSize(), prefetch / 2));
+        //消费者不关心exchange和queue的binding，声明关注的队列即可
+        //第i个消费者的channel建立在第i%n个消费者连接上
+        for (int i = upstreamConsumers.size(); i < dataConsumers + controlConsumers; i++) {
+            String queue = i < dataConsumers ? upQueueName : controlQueueName;
+            MqConnectionPool.Member member = connectionPool.consumer(i);
+            Channel channel = member.getConnection().createChannel();
+            member.channelOpened();
+            channel.queueDeclare(queue, true, false, false, null);
+            channel.basicQos(prefetch);
+            UpstreamConsumer consumer = new UpstreamConsumer(channel, queue, i >= dataConsumers, ackBatchSize,
+                    (properties, body) -> {
+                        member.consumed();
+                        return routeUpstream(properties, body);
+                    });
+            consumer.start();
+            upstreamConsumers.add(consumer);
+        }
+        log.info("注册{}个上行消费者、{}个控制队列消费者，连接池共{}个连接，prefetch:{}，批量ack:{}",
+                dataConsumers, controlConsumers, connectionPool.size(), prefetch, ackBatchSize);
+    }
 
-            @Override
-            public void handleRecoveryStarted(Recoverable recoverable) {
-                log.warn("rabbitMq_准备开始重连");
+    /**
+     * 上行消息转发到目标dispatcher的事件循环
+     * 应答事件（{@link EventTypeEnum#isResponse(int)}）等待它的请求登记在发起请求的节点上，
+     * 而同一dispatcherId的任一节点都可能消费到该应答，因此经eventBus发布给组内所有节点（包括本节点）
+     * 其余事件没有节点在等待，目标为本节点时（绝大多数情况）直接投递到本地事件通道，不经过集群eventBus；
+     * 本地通道已满时返回false，消息由消费者按序暂存并在通道空闲后重放，不会在ack之后丢失
+     * 此处只取得路由字段（{@link EventFrame}），完整解析由事件通道线程在找到处理器后进行
+     * 其他节点的消息以event_data对象经eventBus点对点发送，由{@link com.mcode.gateway.rpc.serialization.EventDataCodec}负责压缩及序列化
+     *
+     * @return 是否已被接收，无法解压或解析的消息视为已接收并丢弃
+     */
+    private boolean routeUpstream(AMQP.BasicProperties properties, byte[] body) {
+        Map<String, Object> headers = properties.getHeaders();
+        Object dispatcherId = headers == null ? null : headers.get(DISPATCHER_ID);
+        Object encoding = headers == null ? null : headers.get(PayloadCompressor.HEADER);
+        try {
+            EventFrame frame = EventFrame.wrap(headers, body, encoding, payloadCompressor);
+            if (EventTypeEnum.isResponse(frame.getType())) {
+                publishedRoutedCount.increment();
+                clusterManager.publishUpstream(dispatcherId == null ?
+                        commonConfig.getDispatcherId() : dispatcherId.toString(), frame.decode());
+                return true;
             }
-        });
-        hasConnected = true;
+            if (dispatcherId == null || commonConfig.getDispatcherId().equals(dispatcherId.toString())) {
+                localRoutedCount.increment();
+                return mqEventUpStream.handlerMessage(frame);
+            }
+            remoteRoutedCount.increment();
+            clusterManager.sendUpstream(dispatcherId.toString(), frame.decode());
+            return true;
+        } catch (IOException e) {
+            log.warn("上行消息解析失败，丢弃消息：{}", e);
+            return true;
+        }
     }
 
-    private void registryConsumer() throws IOException {
-        String upQueueName = mqConfig.getUpQueueName();
-        //消费者不关心exchange和queue的binding，声明关注的队列即可
-        for (int i = 0; i < 2; i++) {
-            Channel channel = connection.createChannel();
-            channel.queueDeclare(upQueueName, true, false, false, null);
-            channel.basicConsume(upQueueName, true, "", new DefaultConsumer(channel) {
-                @Override
-                public void handleDelivery(String consumerTag, Envelope envelope,
-                                           AMQP.BasicProperties properties, byte[] body) throws IOException {
-                    Object dispatcherId;
-                    Map<String, Object> headers = properties.getHeaders();
-                    if (headers == null || (dispatcherId = headers.get(DISPATCHER_ID)) == null) {
-                        clusterManager.publish(commonConfig.getDispatcherId(), body);
-                    } else {
-                        clusterManager.publish(dispatcherId.toString(), body);
-                    }
-                }
-            });
+    /**
+     * 上行消息的本地直达、跨节点转发、应答发布计数
+     */
+    public Map<String, Object> upstreamRouteStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("local", localRoutedCount.sum());
+        stats.put("remote", remoteRoutedCount.sum());
+        stats.put("published", publishedRoutedCount.sum());
+        stats.put("busDropped", clusterManager.droppedCount());
+        stats.put("pausedConsumers", pausedConsumers());
+        stats.put("backlog", upstreamConsumers.stream().mapToInt(UpstreamConsumer::backlogSize).sum());
+        return stats;
+    }
+
+    /**
+     * 本地事件通道超过高水位时暂停对应的消费者，回落到低水位后恢复
+     * 通道状态变化时立即触发，另定时校准一次，防止遗漏的通知导致消费者一直暂停
+     */
+    private void startFlowControl() {
+        mqEventUpStream.setFlowListener(() -> mqScheduler.execute(this::reconcileFlow));
+        mqScheduler.scheduleWithFixedDelay(this::reconcileFlow,
+                FLOW_CHECK_INTERVAL, FLOW_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconcileFlow() {
+        for (UpstreamConsumer consumer : upstreamConsumers) {
+            if (mqEventUpStream.isCongested(consumer.isControl())) {
+                consumer.pause();
+            } else {
+                consumer.flush();
+                consumer.resume();
+            }
         }
     }
 
+    /**
+     * 被流控暂停的消费者数量
+     */
+    public long pausedConsumers() {
+        return upstreamConsumers.stream().filter(UpstreamConsumer::isPaused).count();
+    }
+
+    /**
+     * 定时确认消费者中未凑满一批的消息
+     */
+    private void startAckFlush() {
+        mqScheduler.scheduleWithFixedDelay(() -> upstreamConsumers.forEach(UpstreamConsumer::flush),
+                ACK_FLUSH_INTERVAL, ACK_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 各个rabbitMq连接的状态及收发计数
+     */
+    public List<Map<String, Object>> connectionStats() {
+        return connectionPool.stats();
+    }
+
     /**
      * 根据设备类型获取设备队列名
      *
@@ -133,52 +245,163 @@ public class MqConnector implements Bootstrap {
     }
 
     /**
-     * 与dispatcher同步通信
-     * 同步发送消息需要注册一个eventHandler事件处理器，继承SyncEventHandler，并通过setEventType添加事件类型（枚举中定义）
-     * 这个eventHandler将作为异步——同步的桥梁传递事件，dispatcher端响应对的结果将通过eventHandler同步返回
-     * 若不注册eventHandler，则会导致无法接收到事件，同步调用超时
-     * 回调流程详见 {@link EventHandler}
+     * 新增设备类型时预声明其队列
      *
-     * @param publishEvent 推送参数
+     * @param eqType 设备类型
      */
-    public Trans.event_data publishSync(PublishEvent publishEvent, long blockingTime) {
-        SyncWarpper warpper = new SyncWarpper();
-        Consumer<Trans.event_data> consumerProxy = warpper.mockCallback();
-        callbackManager.registerCallbackEvent(publishEvent.getSerialNumber(), consumerProxy);
-        publishAsync(publishEvent);
-        return warpper.blockingResult(blockingTime);
+    public void declareEquipmentQueue(Integer eqType) {
+        if (channelPool != null) {
+            channelPool.declareAsync(getQueue(eqType));
+        }
+    }
+
+    /**
+     * rpc调用，设备响应或超时时future完成，超时以null完成
+     * 调用方不阻塞，适合在event loop线程中使用；不提供同步版本，event loop线程中不能join/get该future
+     * 接收响应需要为流水号注册一个SyncEventHandler（如ReceiveResponseSync），回调流程详见 {@link EventHandler}
+     *
+     * @param timeout 超时时间，ms
+     */
+    public CompletableFuture<Trans.event_data> publishRpc(PublishEvent publishEvent, long timeout) {
+        String serialNumber = publishEvent.getSerialNumber();
+        CompletableFuture<Trans.event_data> future = callbackManager.registerFuture(serialNumber, timeout);
+        try {
+            publishAsync(publishEvent);
+        } catch (RuntimeException e) {
+            callbackManager.removeCallback(serialNumber);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * 非阻塞投递，发送队列已满时直接返回false，不执行溢出策略
+     * 用于publisher线程、amqp回调线程中的重发，这些线程不能在发送队列上等待
+     *
+     * @return 入队成功返回true
+     */
+    public boolean tryPublish(PublishEvent publishEvent) {
+        return selectWorker(publishEvent).offer(publishEvent);
     }
 
     /**
      * 与dispatcher异步通信
      */
     public void publishAsync(PublishEvent publishEvent) {
-        synchronized (lock) {
-            if (publishQueue.offer(publishEvent)) {
-                lock.notify();
-            } else {
+        PublishWorker worker = selectWorker(publishEvent);
+        if (worker.offer(publishEvent)) {
+            return;
+        }
+        //发送队列已满
+        switch (mqConfig.getOverflowPolicy()) {
+            case BLOCK:
+                //event loop、publisher、amqp等线程不能等待，改为溢写，由溢写线程稍后重新投递
+                if (NonBlockingThreads.isCurrent()) {
+                    spilledCount.increment();
+                    spillBuffer.offer(publishEvent);
+                } else if (!worker.offer(publishEvent, mqConfig.getPublishBlockTimeout())) {
+                    droppedCount.increment();
+                    log.warn("发送消息队列已满，阻塞超时，丢弃消息：{}", publishEvent);
+                    publishEvent.recycle();
+                }
+                break;
+            case FAIL_FAST:
+                rejectedCount.increment();
+                throw new PublishRejectedException("发送消息队列已满，请稍后重试");
+            case SPILL:
+                spilledCount.increment();
+                //生产者线程只入队，由溢写线程批量落盘
+                spillBuffer.offer(publishEvent);
+                break;
+            default:
+                droppedCount.increment();
                 log.warn("发送消息队列已满，检查publisher线程是否存活");
+        }
+    }
+
+    /**
+     * 发送队列统计：队列深度、容量、丢弃/拒绝/溢写计数
+     */
+    public Map<String, Object> publishQueueStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int depth = 0;
+        int capacity = 0;
+        for (PublishWorker worker : publishWorkers) {
+            depth += worker.depth();
+            capacity += worker.capacity();
+        }
+        stats.put("depth", depth);
+        stats.put("capacity", capacity);
+        stats.put("dropped", droppedCount.sum());
+        stats.put("rejected", rejectedCount.sum());
+        stats.put("spilled", spilledCount.sum());
+        return stats;
+    }
+
+    /**
+     * SPILL策略下溢写的消息由单一线程落盘及定时重新投递，溢写库的读写不会并发
+     */
+    private void startSpillReplay() {
+        spillThread.scheduleWithFixedDelay(this::flushSpill,
+                SPILL_FLUSH_INTERVAL, SPILL_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+        spillThread.scheduleWithFixedDelay(() -> {
+            try {
+                long spilled = spilledCount.sum();
+                if (spilled == replayedCount) {
+                    return;
+                }
+                flushSpill();
+                List<PublishEvent> events = mapDatabase.readAndClear(PublishEvent.class, PUBLISH_SPILL);
+                mapDatabase.close();
+                replayedCount = spilled;
+                log.info("重新投递溢写消息{}条，发送队列状态：{}", events.size(), publishQueueStats());
+                events.forEach(this::publishAsync);
+            } catch (Exception e) {
+                log.error("溢写消息重新投递异常：{}", Arrays.toString(e.getStackTrace()));
             }
+        }, SPILL_REPLAY_INTERVAL, SPILL_REPLAY_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 将溢写缓冲中的消息批量写入本地库，每批关闭一次DB，仅在溢写线程中调用
+     */
+    private void flushSpill() {
+        if (spillBuffer.isEmpty()) {
+            return;
+        }
+        Map<String, PublishEvent> batch = new LinkedHashMap<>();
+        PublishEvent publishEvent;
+        while ((publishEvent = spillBuffer.poll()) != null) {
+            //同一流水号可能对应多个节点的消息，溢写时使用独立的key
+            batch.put(String.valueOf(IdGenerator.buildDistributedId()), publishEvent);
         }
+        try {
+            mapDatabase.writeAll(batch, PUBLISH_SPILL).close();
+        } catch (Exception e) {
+            droppedCount.add(batch.size());
+            log.error("溢写消息写入失败，丢弃{}条消息：{}", batch.size(), Arrays.toString(e.getStackTrace()));
+        }
+        batch.values().forEach(PublishEvent::recycle);
     }
 
     @Override
     public void init() {
+        PublishEvent.setDefaultTimeout(commonConfig.getDefaultTimeout());
         //rabbitMq有自动重连机制，但不会在client初始化时生效，故需手动重连
         //且它的自动重连仅针对connection，channel没用
+        connectionPool = new MqConnectionPool(mqConfig);
         try {
-            connectRabbitMq();
+            connectionPool.connect();
         } catch (TimeoutException | IOException e) {
             log.error("连接rabbitmq超时！尝试进行重连");
-            hasConnected = false;
-            while (!hasConnected) {
+            while (!connectionPool.isConnected()) {
                 try {
                     Thread.sleep(5000);
                 } catch (InterruptedException e1) {
                     //do nothing
                 }
                 try {
-                    connectRabbitMq();
+                    connectionPool.connect();
                 } catch (IOException | TimeoutException e1) {
                     log.error("连接rabbitMq失败，5s后重试");
                 }
@@ -194,133 +417,48 @@ public class MqConnector implements Bootstrap {
                 throw new RuntimeException("无法注册rabbitMq消费者" + Arrays.toString(e1.getStackTrace()));
             }
         }
+        startAckFlush();
+        startFlowControl();
         startPublishThread();
+        startSpillReplay();
     }
 
     /**
-     * 由于channel非线程安全，把所有publish的操作放到一条线程处理
+     * 由于channel非线程安全，每条publisher线程独占自己的channel，按(queue,connector)的hash分配消息
      */
     private void startPublishThread() {
-        publisherFactory.execute(new Runnable() {
-            private Map<String, Channel> routingChannel = new HashMap<>();
-            private boolean runnable = true;
-
-            @Override
-            public void run() {
-                while (runnable) {
-                    PublishEvent eventEntry;
-                    synchronized (lock) {
-                        while ((eventEntry = publishQueue.poll()) == null) {
-                            try {
-                                lock.wait();
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                        adaptChannel(eventEntry);
-                    }
-                }
-            }
-
-            /**
-             * 根据routingKey获取相应的channel，分发消息给不同设备的队列
-             */
-            private void adaptChannel(PublishEvent eventEntry) {
-                String queue = eventEntry.getQueue();
-                Channel channel;
-                if ((channel = routingChannel.get(queue)) != null) {
-                    publish(eventEntry, channel);
-                } else {
-                    Channel newChannel = newProducerChannel(queue);
-                    if (newChannel != null) {
-                        routingChannel.put(queue, newChannel);
-                        publish(eventEntry, newChannel);
-                    }
-                }
-            }
-
-            /**
-             * 推送给mq
-             */
-            private void publish(PublishEvent eventEntry, Channel localChannel) {
-                String routingKey = eventEntry.getQueue();
-                byte[] message = eventEntry.getMessage();
-                Map<String, Object> headers = eventEntry.getHeaders();
-                String exchangeName = mqConfig.getExchangeName();
-                try {
-                    //暂不持久化消息
-                    AMQP.BasicProperties props = new AMQP.BasicProperties().
-                            builder().
-                            deliveryMode(1).
-                            headers(headers).
-                            build();
-                    localChannel.basicPublish(exchangeName, routingKey, false, props, message);
-                } catch (IOException | ShutdownSignalException e) {
-                    log.error("消息发送失败,等待mq重连：{}",Arrays.toString(e.getStackTrace()));
-                }
-            }
-
-            /**
-             * 生产者channel
-             * channel并非线程安全，共用一个channel可能导致autoACK出现问题
-             *
-             * @return Channel
-             */
-
-            private Channel newProducerChannel(String queue) {
-                try {
-                    log.info(queue);
-                    Channel channel = connection.createChannel();
-                    String exchangeName = mqConfig.getExchangeName();
-                    //direct模式、持久化交换机
-                    channel.exchangeDeclare(exchangeName, QUEUE_MODEL, true);
-                    //声明持久化、非排他、非自动删除队列,设置队列消息过期时间
-                    Map<String, Object> param = new HashMap<>();
-//                    param.put("x-message-ttl", 40000);
-                    channel.queueDeclare(queue, true, false, false, param);
-                    //绑定队列到交换机,queue名做routingKey
-                    channel.queueBind(queue, exchangeName, queue);
-                    return channel;
-                } catch (IOException | ShutdownSignalException e1) {
-                    //若connection已关闭
-                    log.error("rabbitMql连接已关闭，无法创建生产者channel，等待重新连接");
-                    e1.printStackTrace();
-                    runnable = false;
-                    return null;
-                }
-            }
+        int threads = mqConfig.getPublisherThreads() > 0 ?
+                mqConfig.getPublisherThreads() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger(1);
+        publisherFactory = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r);
+            thread.setName("publish-exec-" + threadIndex.getAndIncrement());
+            return thread;
         });
+        channelPool = new ProducerChannelPool(mqConfig, connectionPool, threads);
+        //预声明交换机及所有设备类型的队列，避免首条消息承担声明开销
+        channelPool.declareTopology(configCenter.getEquipmentTypeRegistry().keySet().stream().
+                map(this::getQueue).collect(Collectors.toList()));
+        channelPool.start();
+        publishWorkers = new PublishWorker[threads];
+        for (int i = 0; i < threads; i++) {
+            publishWorkers[i] = new PublishWorker(i + 1, mqConfig, mqConfig.getPublishQueueSize(),
+                    channelPool, payloadCompressor);
+            publisherFactory.execute(publishWorkers[i]);
+        }
+        log.info("启动{}条publisher线程", threads);
     }
 
     /**
-     * 消息同步器
+     * 同一(queue,connector)的消息固定路由到同一条publisher线程
      */
-    private class SyncWarpper {
-        private volatile Trans.event_data eventEntry;
-        private CountDownLatch latch = new CountDownLatch(1);
-        private long current = System.currentTimeMillis();
-
-        public Trans.event_data blockingResult(long timeout) {
-            try {
-                boolean await = latch.await(timeout, TimeUnit.MILLISECONDS);
-                if (!await) {
-                    log.warn("同步调用超时，检查mq连接状态");
-                    return null;
-                }
-            } catch (InterruptedException e) {
-                log.warn("同步调用线程被中断,{}", e);
-                return null;
-            }
-            log.info("同步调用返回结果:{},耗时：{}", eventEntry, System.currentTimeMillis() - current);
-            return eventEntry;
-        }
-
-        public Consumer<Trans.event_data> mockCallback() {
-            return eventEntry -> {
-                this.eventEntry = eventEntry;
-                latch.countDown();
-            };
+    private PublishWorker selectWorker(PublishEvent publishEvent) {
+        int hash = publishEvent.getQueue().hashCode();
+        Object connectorId = publishEvent.getHeaders().get(CONNECTOR_ID);
+        if (connectorId != null) {
+            hash = 31 * hash + connectorId.hashCode();
         }
+        return publishWorkers[(hash & Integer.MAX_VALUE) % publishWorkers.length];
     }
 
 }
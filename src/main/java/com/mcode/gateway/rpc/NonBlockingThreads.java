@@ -0,0 +1,41 @@
+package com.mcode.gateway.rpc;
+
+import io.vertx.core.Context;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 不能在发送队列上阻塞的线程
+ * event loop、publisher线程、amqp连接/回调线程、rpc超时线程负责消费发送队列或处理回执，
+ * 发送队列满时在这些线程上等待只会让队列更难腾出空位，BLOCK策略在这些线程上改为溢写
+ */
+public final class NonBlockingThreads {
+    private static final ThreadLocal<Boolean> MARKED = new ThreadLocal<>();
+
+    private NonBlockingThreads() {
+    }
+
+    /**
+     * 标记当前线程不能阻塞
+     */
+    public static void mark() {
+        MARKED.set(Boolean.TRUE);
+    }
+
+    /**
+     * 包装线程工厂，创建的线程启动时标记为不能阻塞
+     */
+    public static ThreadFactory wrap(ThreadFactory factory) {
+        return r -> factory.newThread(() -> {
+            mark();
+            r.run();
+        });
+    }
+
+    /**
+     * 当前线程是否不能阻塞
+     */
+    public static boolean isCurrent() {
+        return Context.isOnEventLoopThread() || MARKED.get() != null;
+    }
+}
@@ -0,0 +1,211 @@
+package com.mcode.gateway.rpc;
+
+import com.mcode.gateway.configuration.MqConfig;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownSignalException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 生产者channel池
+ * 每条publisher线程对应一个槽位，channel的创建、替换及队列声明全部由channel-keeper线程完成，
+ * publisher线程只读取槽位中的channel，发现channel失效时通知keeper修复并等待，自身不会退出
+ * 第i个槽位的channel建立在连接池的第i%n个connection上，
+ * 连接断开时channel由客户端自动恢复，keeper只替换连接正常但被broker关闭的channel
+ */
+@Slf4j
+public class ProducerChannelPool {
+    private static final String QUEUE_MODEL = "direct";
+    /**
+     * keeper巡检间隔
+     */
+    private static final long KEEPER_INTERVAL = 1000;
+    private final MqConfig mqConfig;
+    private final MqConnectionPool connectionPool;
+    private final Slot[] slots;
+    /**
+     * 已声明并绑定到交换机的队列
+     */
+    private final Set<String> declaredQueues = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicBoolean repairScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService keeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("channel-keeper-1");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProducerChannelPool(MqConfig mqConfig, MqConnectionPool connectionPool, int size) {
+        this.mqConfig = mqConfig;
+        this.connectionPool = connectionPool;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i + 1, connectionPool.producer(i));
+        }
+    }
+
+    /**
+     * 创建所有channel并启动keeper巡检
+     */
+    public void start() {
+        repair();
+        keeper.scheduleWithFixedDelay(this::repair, KEEPER_INTERVAL, KEEPER_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public Slot slot(int index) {
+        return slots[index];
+    }
+
+    /**
+     * 通知keeper尽快修复失效的channel，重复的通知会被合并
+     */
+    public void requestRepair() {
+        if (repairScheduled.compareAndSet(false, true)) {
+            keeper.execute(() -> {
+                repairScheduled.set(false);
+                repair();
+            });
+        }
+    }
+
+    /**
+     * 同步声明交换机及队列，启动时预先声明所有设备类型的队列
+     *
+     * @param queues 队列名
+     */
+    public void declareTopology(Collection<String> queues) {
+        Connection connection = connectionPool.producer(0).getConnection();
+        if (connection == null || !connection.isOpen()) {
+            log.warn("rabbitMq未连接，跳过队列预声明:{}", queues);
+            return;
+        }
+        Channel channel = null;
+        try {
+            channel = connection.createChannel();
+            channel.exchangeDeclare(mqConfig.getExchangeName(), QUEUE_MODEL, true);
+            for (String queue : queues) {
+                declareQueue(channel, queue);
+            }
+            log.info("完成队列预声明:{}", queues);
+        } catch (IOException | ShutdownSignalException e) {
+            log.error("队列预声明失败，首次发送时重新声明:{}", e.getMessage());
+        } finally {
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * 在keeper线程中异步声明队列，用于运行时新增设备类型
+     *
+     * @param queue 队列名
+     */
+    public void declareAsync(String queue) {
+        keeper.execute(() -> declareTopology(Collections.singletonList(queue)));
+    }
+
+    public boolean isDeclared(String queue) {
+        return declaredQueues.contains(queue);
+    }
+
+    /**
+     * 声明持久化、非排他、非自动删除队列，并以queue名做routingKey绑定到交换机
+     * 正常情况下队列已在启动或新增设备类型时预声明，publisher线程仅对其他节点新增的设备类型兜底调用
+     */
+    public void declareQueue(Channel channel, String queue) throws IOException {
+        channel.queueDeclare(queue, true, false, false, new HashMap<>());
+        channel.queueBind(queue, mqConfig.getExchangeName(), queue);
+        declaredQueues.add(queue);
+    }
+
+    /**
+     * 替换所有失效的channel
+     * 所在连接断开期间不做处理，等待客户端自动恢复连接及其上的channel，各连接上的槽位互不影响
+     */
+    private void repair() {
+        for (Slot slot : slots) {
+            Channel channel = slot.channel;
+            Connection connection = slot.member.getConnection();
+            if ((channel != null && channel.isOpen()) || connection == null || !connection.isOpen()) {
+                continue;
+            }
+            try {
+                slot.bind(newProducerChannel(connection));
+                if (channel != null) {
+                    slot.member.channelClosed();
+                }
+                slot.member.channelOpened();
+                log.info("publisher线程{}的channel已{}", slot.index, channel == null ? "创建" : "替换");
+            } catch (IOException | ShutdownSignalException e) {
+                log.error("创建生产者channel失败，等待下次巡检:{}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 生产者channel
+     * channel并非线程安全，每个槽位独占一个channel，由交换机按routingKey分发到各设备队列
+     */
+    private Channel newProducerChannel(Connection connection) throws IOException {
+        Channel channel = connection.createChannel();
+        //direct模式、持久化交换机
+        channel.exchangeDeclare(mqConfig.getExchangeName(), QUEUE_MODEL, true);
+        if (mqConfig.isPublisherConfirm()) {
+            channel.confirmSelect();
+        }
+        return channel;
+    }
+
+    private void closeQuietly(Channel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        } catch (Exception e) {
+            //do nothing
+        }
+    }
+
+    /**
+     * channel槽位，channel由keeper线程写入，publisher线程读取
+     */
+    public class Slot {
+        private final int index;
+        @Getter
+        private final MqConnectionPool.Member member;
+        @Getter
+        private volatile Channel channel;
+        @Getter
+        private volatile ConfirmTracker tracker;
+
+        private Slot(int index, MqConnectionPool.Member member) {
+            this.index = index;
+            this.member = member;
+        }
+
+        private void bind(Channel newChannel) {
+            if (mqConfig.isPublisherConfirm()) {
+                ConfirmTracker newTracker = new ConfirmTracker();
+                newChannel.addConfirmListener(newTracker);
+                //channel关闭后不会再收到回执，未确认的消息全部按nack处理
+                newChannel.addShutdownListener(cause -> newTracker.failAll());
+                tracker = newTracker;
+            }
+            channel = newChannel;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.mcode.gateway.rpc;
+
+import com.rabbitmq.client.AMQP;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 不可变BasicProperties缓存，仅包含connectorId消息头的消息按connectorId复用同一个BasicProperties
+ * 非线程安全，每条publisher线程持有一个
+ */
+public class PropertiesCache {
+    /**
+     * connector节点数量有限，超过上限时清空，防止异常的connectorId撑爆缓存
+     */
+    private static final int MAX_SIZE = 4096;
+    private final Map<Object, AMQP.BasicProperties> connectorProperties = new HashMap<>();
+
+    public AMQP.BasicProperties of(Map<String, Object> headers) {
+        if (headers.size() == 1) {
+            Object connectorId = headers.get(MqConnector.CONNECTOR_ID);
+            if (connectorId != null) {
+                AMQP.BasicProperties props = connectorProperties.get(connectorId);
+                if (props == null) {
+                    if (connectorProperties.size() >= MAX_SIZE) {
+                        connectorProperties.clear();
+                    }
+                    props = build(Collections.singletonMap(MqConnector.CONNECTOR_ID, connectorId));
+                    connectorProperties.put(connectorId, props);
+                }
+                return props;
+            }
+        }
+        return build(headers);
+    }
+
+    /**
+     * 暂不持久化消息
+     */
+    private static AMQP.BasicProperties build(Map<String, Object> headers) {
+        return new AMQP.BasicProperties().
+                builder().
+                deliveryMode(1).
+                headers(headers).
+                build();
+    }
+}
@@ -4,6 +4,8 @@ import com.mcode.gateway.configuration.CommonConfig;
 import com.mcode.gateway.type.QosType;
 import com.mcode.gateway.util.SpringContextUtil;
 import io.netty.util.HashedWheelTimer;
+import io.netty.util.Recycler;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -13,13 +15,26 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
-@ToString(exclude = "message")
+@ToString(exclude = {"message", "handle"})
 @Getter
 public class PublishEvent {
     /**
      * 时间轮算法定时器
      */
     private transient static HashedWheelTimer timer = new HashedWheelTimer();
+    /**
+     * PublishEvent对象池
+     */
+    private static final Recycler<PublishEvent> RECYCLER = new Recycler<PublishEvent>() {
+        @Override
+        protected PublishEvent newObject(Handle<PublishEvent> handle) {
+            return new PublishEvent(handle);
+        }
+    };
+    /**
+     * 默认消息重发窗口时间
+     */
+    private static volatile Integer defaultTimeout;
     /**
      * 设备系统唯一ID
      */
@@ -62,16 +77,97 @@ public class PublishEvent {
      * 时间戳
      */
     private long timeStamp;
+    /**
+     * broker回执ack的回调，开启publisher confirm时生效
+     */
+    private transient Consumer<PublishEvent> ackCallback;
+    /**
+     * broker回执nack（或channel关闭未回执）的回调，开启publisher confirm时生效
+     */
+    private transient Consumer<PublishEvent> nackCallback;
+    /**
+     * 被broker拒收的次数
+     */
+    private transient int nackCount = 0;
+
+    /**
+     * 对象池回收句柄，仅{@link #newInstance(String, byte[], String)}获取的对象不为空
+     */
+    @Getter(AccessLevel.NONE)
+    private final transient Recycler.Handle<PublishEvent> handle;
 
     public PublishEvent(String queue, byte[] message, String serialNumber) {
+        this.handle = null;
+        init(queue, message, serialNumber);
+    }
+
+    private PublishEvent(Recycler.Handle<PublishEvent> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池获取，用于发送后即丢弃的消息（pong、登陆/上传响应等）
+     * 发送完成后由publisher线程调用{@link #recycle()}归还，调用方不能再持有该对象，
+     * 需要缓存/重发的消息（qos1、rpc）请使用构造器创建
+     */
+    public static PublishEvent newInstance(String queue, byte[] message, String serialNumber) {
+        PublishEvent publishEvent = RECYCLER.get();
+        publishEvent.init(queue, message, serialNumber);
+        return publishEvent;
+    }
+
+    private void init(String queue, byte[] message, String serialNumber) {
         this.queue = queue;
         this.message = message;
         this.serialNumber = serialNumber;
-        this.timeout = SpringContextUtil.getBean(CommonConfig.class).getDefaultTimeout();
+        this.timeout = defaultTimeout();
         this.qos = QosType.AT_MOST_ONCE.getType();
         this.timeStamp = System.currentTimeMillis();
     }
 
+    /**
+     * 归还对象池，非池化对象调用无效果
+     */
+    public void recycle() {
+        if (handle == null) {
+            return;
+        }
+        uniqueId = null;
+        rePostCount = 0;
+        endurance = false;
+        queue = null;
+        message = null;
+        serialNumber = null;
+        headers.clear();
+        ackCallback = null;
+        nackCallback = null;
+        nackCount = 0;
+        handle.recycle(this);
+    }
+
+    /**
+     * 是否可回收
+     */
+    public boolean isRecyclable() {
+        return handle != null;
+    }
+
+    /**
+     * 设置默认消息重发窗口时间，未设置时从spring容器中读取并缓存
+     */
+    public static void setDefaultTimeout(Integer timeout) {
+        defaultTimeout = timeout;
+    }
+
+    private static Integer defaultTimeout() {
+        Integer timeout = defaultTimeout;
+        if (timeout == null) {
+            timeout = SpringContextUtil.getBean(CommonConfig.class).getDefaultTimeout();
+            defaultTimeout = timeout;
+        }
+        return timeout;
+    }
+
     /**
      * 添加rabbitMq消息头
      */
@@ -101,6 +197,40 @@ public class PublishEvent {
         timer.newTimeout(timeout -> consumer.accept(this), 6000, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * 设置publisher confirm回执回调
+     *
+     * @param ackCallback  broker确认收到
+     * @param nackCallback broker拒收或channel关闭
+     */
+    public void onConfirm(Consumer<PublishEvent> ackCallback, Consumer<PublishEvent> nackCallback) {
+        this.ackCallback = ackCallback;
+        this.nackCallback = nackCallback;
+    }
+
+    /**
+     * 是否需要追踪broker回执
+     */
+    public boolean needConfirm() {
+        return ackCallback != null || nackCallback != null;
+    }
+
+    /**
+     * broker回执，由{@link ConfirmTracker}在connection的回调线程中调用
+     */
+    public void confirmed(boolean ack) {
+        Consumer<PublishEvent> callback;
+        if (ack) {
+            callback = ackCallback;
+        } else {
+            nackCount++;
+            callback = nackCallback;
+        }
+        if (callback != null) {
+            callback.accept(this);
+        }
+    }
+
     /**
      * 设置业务系统唯一ID
      */
@@ -0,0 +1,336 @@
+package com.mcode.gateway.rpc;
+
+import com.mcode.gateway.configuration.MqConfig;
+import com.mcode.gateway.rpc.serialization.EventBatchCodec;
+import com.mcode.gateway.rpc.serialization.PayloadCompressor;
+import com.mcode.gateway.util.MpscRingBuffer;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * publisher线程
+ * 由于channel非线程安全，每条publisher线程独占自己的发送队列及channel槽位，channel由{@link ProducerChannelPool}维护，
+ * 同一(queue,connector)的消息总是被路由到同一条publisher线程，保证单个connector的消息顺序
+ * 开启批量发送时，同一(queue,connector)的消息在batchMaxSize/batchLingerMs内被合并为一条mq消息，
+ * 携带其他消息头的消息（如广播）不参与合并
+ */
+@Slf4j
+public class PublishWorker implements Runnable {
+    private final int index;
+    private final MqConfig mqConfig;
+    private final MpscRingBuffer<PublishEvent> publishQueue;
+    private final ProducerChannelPool channelPool;
+    private final ProducerChannelPool.Slot slot;
+    private final PayloadCompressor compressor;
+    private final PropertiesCache propertiesCache = new PropertiesCache();
+    private volatile boolean waiting = false;
+    private volatile Thread workerThread;
+    /**
+     * 批量发送模式下待发送的批次，queue -> connectorId -> 批次，仅publisher线程访问
+     */
+    private final Map<String, Map<Object, EventBatch>> pendingBatch = new HashMap<>();
+    private int pendingBatches = 0;
+    private long lingerDeadline = Long.MAX_VALUE;
+    /**
+     * 队列为空时publisher线程的最长休眠时间
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /**
+     * 阻塞入队时的重试间隔
+     */
+    private static final long OFFER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    /**
+     * 等待channel恢复时的检查间隔
+     */
+    private static final long CHANNEL_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    public PublishWorker(int index, MqConfig mqConfig, int queueSize,
+                         ProducerChannelPool channelPool, PayloadCompressor compressor) {
+        this.index = index;
+        this.mqConfig = mqConfig;
+        this.publishQueue = new MpscRingBuffer<>(queueSize);
+        this.channelPool = channelPool;
+        this.slot = channelPool.slot(index - 1);
+        this.compressor = compressor;
+    }
+
+    /**
+     * 投递到本线程的发送队列，无锁，可被任意线程并发调用
+     *
+     * @return 队列已满时返回false
+     */
+    public boolean offer(PublishEvent publishEvent) {
+        if (publishQueue.offer(publishEvent)) {
+            if (waiting) {
+                LockSupport.unpark(workerThread);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 阻塞投递，队列已满时等待直到超时
+     *
+     * @param timeout 最长等待时间，ms
+     * @return 超时仍未入队返回false
+     */
+    public boolean offer(PublishEvent publishEvent, long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!offer(publishEvent)) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(OFFER_PARK_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * 发送队列深度
+     */
+    public int depth() {
+        return publishQueue.size();
+    }
+
+    /**
+     * 发送队列容量
+     */
+    public int capacity() {
+        return publishQueue.capacity();
+    }
+
+    @Override
+    public void run() {
+        workerThread = Thread.currentThread();
+        //nack回调等在本线程中的投递不能阻塞在本线程自己的队列上
+        NonBlockingThreads.mark();
+        boolean batching = mqConfig.isBatchEnabled();
+        while (!Thread.currentThread().isInterrupted()) {
+            PublishEvent eventEntry = publishQueue.poll();
+            if (eventEntry == null) {
+                if (pendingBatches > 0 && System.nanoTime() >= lingerDeadline) {
+                    flushBatches();
+                    continue;
+                }
+                //先声明等待再检查队列，避免错过生产者的唤醒；限时休眠兜底
+                waiting = true;
+                if (publishQueue.isEmpty()) {
+                    long parkNanos = pendingBatches > 0 ?
+                            Math.min(IDLE_PARK_NANOS, lingerDeadline - System.nanoTime()) : IDLE_PARK_NANOS;
+                    LockSupport.parkNanos(this, parkNanos);
+                }
+                waiting = false;
+                continue;
+            }
+            try {
+                if (batching && isBatchable(eventEntry)) {
+                    addToBatch(eventEntry);
+                    if (pendingBatches > 0 && System.nanoTime() >= lingerDeadline) {
+                        flushBatches();
+                    }
+                } else {
+                    if (pendingBatches > 0) {
+                        //先发出同一(queue,connector)的待发送批次，保证单个connector的消息顺序
+                        flushPending(eventEntry);
+                    }
+                    adaptChannel(eventEntry);
+                }
+            } catch (RuntimeException e) {
+                //单条消息的异常不能导致publisher线程退出
+                log.error("publisher线程{}发送消息异常：{}", index, e);
+            }
+        }
+        log.error("publisher线程{}退出", index);
+    }
+
+    /**
+     * 只有消息头仅含connectorId的消息可以合并，event_batch信封只携带connectorId，
+     * 广播标记、目标设备列表等其他消息头的消息合并后会丢失消息头，必须单独发送
+     */
+    private static boolean isBatchable(PublishEvent eventEntry) {
+        Map<String, Object> headers = eventEntry.getHeaders();
+        return headers.size() == 1 && headers.get(MqConnector.CONNECTOR_ID) != null;
+    }
+
+    /**
+     * 发送与该消息同一(queue,connectorId)的待发送批次
+     */
+    private void flushPending(PublishEvent eventEntry) {
+        Object connectorId = eventEntry.getHeaders().get(MqConnector.CONNECTOR_ID);
+        Map<Object, EventBatch> batches;
+        EventBatch batch;
+        if (connectorId != null && (batches = pendingBatch.get(eventEntry.getQueue())) != null &&
+                (batch = batches.get(connectorId)) != null && !batch.events.isEmpty()) {
+            flushBatch(batch);
+        }
+    }
+
+    /**
+     * 按(queue,connectorId)归并待发送消息，达到batchMaxSize立即发送
+     */
+    private void addToBatch(PublishEvent eventEntry) {
+        Object connectorId = eventEntry.getHeaders().get(MqConnector.CONNECTOR_ID);
+        EventBatch batch = pendingBatch.
+                computeIfAbsent(eventEntry.getQueue(), q -> new HashMap<>()).
+                computeIfAbsent(connectorId, c -> new EventBatch(eventEntry.getQueue(), c));
+        if (batch.events.isEmpty()) {
+            if (pendingBatches++ == 0) {
+                lingerDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mqConfig.getBatchLingerMs());
+            }
+        }
+        batch.events.add(eventEntry);
+        if (batch.events.size() >= mqConfig.getBatchMaxSize()) {
+            flushBatch(batch);
+        }
+    }
+
+    /**
+     * 发送所有待发送的批次
+     */
+    private void flushBatches() {
+        for (Map<Object, EventBatch> batches : pendingBatch.values()) {
+            for (EventBatch batch : batches.values()) {
+                if (!batch.events.isEmpty()) {
+                    flushBatch(batch);
+                }
+            }
+        }
+        pendingBatches = 0;
+    }
+
+    /**
+     * 单条消息原样发送，多条消息打包为一个event_batch信封发送，
+     * 信封的publisher confirm回执扇出给批次内的每条消息
+     */
+    private void flushBatch(EventBatch batch) {
+        List<PublishEvent> events = batch.events;
+        if (events.size() == 1) {
+            adaptChannel(events.get(0));
+        } else {
+            PublishEvent envelope = PublishEvent.newInstance(batch.queue,
+                    EventBatchCodec.encode(events),
+                    events.get(0).getSerialNumber());
+            envelope.addHeaders(MqConnector.CONNECTOR_ID, batch.connectorId);
+            envelope.addHeaders(MqConnector.BATCH_SIZE, events.size());
+            if (events.stream().anyMatch(PublishEvent::needConfirm)) {
+                //回执扇出给批次内的消息，此时批次内的消息都不能归还对象池
+                List<PublishEvent> members = new ArrayList<>(events);
+                envelope.onConfirm(e -> members.forEach(m -> m.confirmed(true)),
+                        e -> members.forEach(m -> m.confirmed(false)));
+            } else {
+                events.forEach(PublishEvent::recycle);
+            }
+            adaptChannel(envelope);
+        }
+        events.clear();
+        if (pendingBatches > 0) {
+            pendingBatches--;
+        }
+    }
+
+    /**
+     * 同一(queue,connectorId)的待发送批次，发送后清空复用
+     */
+    private static class EventBatch {
+        private final String queue;
+        private final Object connectorId;
+        private final List<PublishEvent> events = new ArrayList<>();
+
+        private EventBatch(String queue, Object connectorId) {
+            this.queue = queue;
+            this.connectorId = connectorId;
+        }
+    }
+
+    /**
+     * 取出本线程槽位中的channel发送，队列已在启动时预声明，
+     * channel失效时等待keeper线程替换，不在发送路径上创建channel
+     */
+    private void adaptChannel(PublishEvent eventEntry) {
+        Channel channel = awaitChannel();
+        String queue = eventEntry.getQueue();
+        if (!channelPool.isDeclared(queue)) {
+            try {
+                channelPool.declareQueue(channel, queue);
+            } catch (IOException | ShutdownSignalException e) {
+                log.error("声明队列{}失败：{}", queue, e.getMessage());
+            }
+        }
+        publish(eventEntry, channel);
+    }
+
+    /**
+     * 等待槽位中的channel可用，期间发送队列中的消息按溢出策略处理
+     */
+    private Channel awaitChannel() {
+        Channel channel = slot.getChannel();
+        if (channel != null && channel.isOpen()) {
+            return channel;
+        }
+        log.warn("publisher线程{}的channel不可用，等待恢复", index);
+        while ((channel = slot.getChannel()) == null || !channel.isOpen()) {
+            channelPool.requestRepair();
+            LockSupport.parkNanos(this, CHANNEL_PARK_NANOS);
+        }
+        log.info("publisher线程{}的channel已恢复", index);
+        return channel;
+    }
+
+    /**
+     * 推送给mq
+     */
+    private void publish(PublishEvent eventEntry, Channel localChannel) {
+        String routingKey = eventEntry.getQueue();
+        byte[] message = eventEntry.getMessage();
+        Map<String, Object> headers = eventEntry.getHeaders();
+        String exchangeName = mqConfig.getExchangeName();
+        ConfirmTracker tracker = slot.getTracker();
+        long seqNo = -1;
+        //超过阈值的消息压缩后发送，不修改PublishEvent本身，nack重发时重新压缩
+        if (compressor.shouldCompress(message)) {
+            byte[] compressed = compressor.compress(message);
+            if (compressed != null) {
+                message = compressed;
+                headers = new HashMap<>(headers);
+                headers.put(PayloadCompressor.HEADER, PayloadCompressor.DEFLATE);
+            }
+        }
+        try {
+            AMQP.BasicProperties props = propertiesCache.of(headers);
+            //开启confirm时，以channel的下一个seqNo登记消息，等待broker异步回执
+            if (tracker != null && eventEntry.needConfirm()) {
+                seqNo = localChannel.getNextPublishSeqNo();
+                tracker.track(seqNo, eventEntry);
+            }
+            localChannel.basicPublish(exchangeName, routingKey, false, props, message);
+            slot.getMember().published();
+            //帧已在basicPublish中编码完成，无需追踪回执的池化消息可立即归还
+            if (!eventEntry.needConfirm()) {
+                eventEntry.recycle();
+            }
+        } catch (IOException | ShutdownSignalException e) {
+            log.error("消息发送失败,等待mq重连：{}", Arrays.toString(e.getStackTrace()));
+            if (tracker != null && seqNo != -1) {
+                tracker.untrack(seqNo);
+            }
+            //与broker nack的处理一致：追踪回执的消息回调nack（qos1立即重发），其余池化消息直接归还
+            if (eventEntry.needConfirm()) {
+                eventEntry.confirmed(false);
+            } else {
+                eventEntry.recycle();
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.mcode.gateway.rpc;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.BiPredicate;
+
+/**
+ * 上行队列消费者，手动ack
+ * 消息交给事件循环后才确认，每ackBatchSize条（或定时{@link #flush()}）以multiple=true批量ack一次，
+ * 配合basicQos的prefetch，broker最多只会推送prefetch条未确认的消息，实现broker端流控
+ * 本地事件队列超过高水位时{@link #pause()}取消订阅，回落到低水位后{@link #resume()}重新订阅
+ * 本地通道拒收时不nack重新入队（broker会把它排到后续消息之后，打乱同一设备的顺序），
+ * 而是将该消息及之后推送来的消息按序暂存，不再交给通道，由{@link #flush()}在通道有空位时按序重放，
+ * 暂存的消息未确认，数量受prefetch限制
+ */
+@Slf4j
+public class UpstreamConsumer extends DefaultConsumer {
+    /**
+     * 消息路由，返回false表示本地无法接收，消息暂存等待重放
+     */
+    private final BiPredicate<AMQP.BasicProperties, byte[]> router;
+    private final int ackBatchSize;
+    private final String queue;
+    private final boolean control;
+    private long lastDeliveryTag;
+    private int unacked = 0;
+    private volatile boolean paused = false;
+    /**
+     * 被拒收的消息及其后推送来的消息，按deliveryTag顺序排列
+     */
+    private final Deque<Delivery> backlog = new ArrayDeque<>();
+
+    public UpstreamConsumer(Channel channel, String queue, boolean control, int ackBatchSize,
+                            BiPredicate<AMQP.BasicProperties, byte[]> router) {
+        super(channel);
+        this.queue = queue;
+        this.control = control;
+        this.ackBatchSize = ackBatchSize;
+        this.router = router;
+    }
+
+    /**
+     * 订阅队列
+     */
+    public void start() throws IOException {
+        getChannel().basicConsume(queue, false, "", this);
+    }
+
+    /**
+     * 取消订阅，broker停止推送，已推送的消息照常处理及确认
+     */
+    public synchronized void pause() {
+        if (paused || getConsumerTag() == null) {
+            return;
+        }
+        ackPending();
+        try {
+            getChannel().basicCancel(getConsumerTag());
+            paused = true;
+        } catch (IOException | ShutdownSignalException e) {
+            log.error("暂停消费者失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 重新订阅队列
+     */
+    public synchronized void resume() {
+        if (!paused) {
+            return;
+        }
+        try {
+            start();
+            paused = false;
+        } catch (IOException | ShutdownSignalException e) {
+            log.error("恢复消费者失败，等待下次恢复：{}", e.getMessage());
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * 是否为控制队列的消费者
+     */
+    public boolean isControl() {
+        return control;
+    }
+
+    @Override
+    public synchronized void handleDelivery(String consumerTag, Envelope envelope,
+                                            AMQP.BasicProperties properties, byte[] body) {
+        Delivery delivery = new Delivery(envelope.getDeliveryTag(), properties, body);
+        //已有暂存消息时，新消息排在其后，保证顺序
+        if (!backlog.isEmpty() || !deliver(delivery)) {
+            if (backlog.isEmpty()) {
+                log.warn("本地事件通道已满，{}队列的消费者暂停接收，等待通道空闲后按序重放", queue);
+            }
+            backlog.addLast(delivery);
+        }
+    }
+
+    /**
+     * 交给本地通道，接收后计入待确认
+     *
+     * @return 本地通道拒收返回false
+     */
+    private boolean deliver(Delivery delivery) {
+        boolean accepted;
+        try {
+            accepted = router.test(delivery.properties, delivery.body);
+        } catch (Exception e) {
+            //无法解析的消息重新入队也无法处理，确认后丢弃
+            log.warn("上行消息处理异常，丢弃消息：{}", e);
+            accepted = true;
+        }
+        if (accepted) {
+            lastDeliveryTag = delivery.deliveryTag;
+            if (++unacked >= ackBatchSize) {
+                ackPending();
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * 按序重放暂存的消息，遇到拒收即停止，剩余消息等待下次重放
+     */
+    private void replay() {
+        Delivery delivery;
+        while ((delivery = backlog.peekFirst()) != null && deliver(delivery)) {
+            backlog.pollFirst();
+        }
+    }
+
+    /**
+     * 暂存等待重放的消息数
+     */
+    public synchronized int backlogSize() {
+        return backlog.size();
+    }
+
+    /**
+     * channel关闭后未确认的消息由broker重新投递，旧的deliveryTag失效，暂存的消息一并丢弃
+     */
+    @Override
+    public synchronized void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+        backlog.clear();
+        unacked = 0;
+    }
+
+    /**
+     * 重放暂存的消息，并确认所有已处理但尚未ack的消息
+     */
+    public synchronized void flush() {
+        replay();
+        ackPending();
+    }
+
+    private void ackPending() {
+        if (unacked == 0) {
+            return;
+        }
+        try {
+            getChannel().basicAck(lastDeliveryTag, true);
+        } catch (IOException | ShutdownSignalException e) {
+            //channel关闭后未确认的消息会被broker重新投递
+            log.error("批量ack失败，等待mq重连：{}", Arrays.toString(e.getStackTrace()));
+        }
+        unacked = 0;
+    }
+
+    private static class Delivery {
+        private final long deliveryTag;
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+
+        private Delivery(long deliveryTag, AMQP.BasicProperties properties, byte[] body) {
+            this.deliveryTag = deliveryTag;
+            this.properties = properties;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.mcode.gateway.rpc.serialization;
+
+import com.google.protobuf.CodedOutputStream;
+import com.mcode.gateway.rpc.PublishEvent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * trans.proto中event_batch信封的编码
+ * 批次内的消息已经是序列化好的event_data，按repeated字段的wire格式（tag + length + bytes）直接拼接，无需重新序列化
+ */
+public final class EventBatchCodec {
+    /**
+     * event_batch.events字段号
+     */
+    private static final int EVENTS_FIELD_NUMBER = 1;
+
+    private EventBatchCodec() {
+    }
+
+    public static byte[] encode(List<PublishEvent> events) {
+        int size = 0;
+        for (PublishEvent event : events) {
+            size += CodedOutputStream.computeByteArraySize(EVENTS_FIELD_NUMBER, event.getMessage());
+        }
+        byte[] bytes = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        try {
+            for (PublishEvent event : events) {
+                output.writeByteArray(EVENTS_FIELD_NUMBER, event.getMessage());
+            }
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new RuntimeException("event_batch编码失败", e);
+        }
+        return bytes;
+    }
+}
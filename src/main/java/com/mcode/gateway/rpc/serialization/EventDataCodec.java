@@ -0,0 +1,67 @@
+package com.mcode.gateway.rpc.serialization;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+import java.util.zip.DataFormatException;
+
+/**
+ * eventBus中event_data的编解码器
+ * 本节点的消费者直接拿到发送方的对象，protobuf消息不可变，无需拷贝；
+ * 发往其他节点时按 压缩标记(1字节) + 长度(4字节) + protobuf字节 写入，超过阈值的消息体以deflate压缩
+ */
+public class EventDataCodec implements MessageCodec<Trans.event_data, Trans.event_data> {
+    public static final String NAME = "trans.event_data";
+    private static final byte RAW = 0;
+    private static final byte DEFLATE = 1;
+    private final PayloadCompressor payloadCompressor;
+
+    public EventDataCodec(PayloadCompressor payloadCompressor) {
+        this.payloadCompressor = payloadCompressor;
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, Trans.event_data event) {
+        byte[] bytes = event.toByteArray();
+        byte flag = RAW;
+        if (payloadCompressor.shouldCompress(bytes)) {
+            byte[] compressed = payloadCompressor.compress(bytes);
+            if (compressed != null) {
+                bytes = compressed;
+                flag = DEFLATE;
+            }
+        }
+        buffer.appendByte(flag);
+        buffer.appendInt(bytes.length);
+        buffer.appendBytes(bytes);
+    }
+
+    @Override
+    public Trans.event_data decodeFromWire(int pos, Buffer buffer) {
+        byte flag = buffer.getByte(pos);
+        int length = buffer.getInt(pos + 1);
+        byte[] bytes = buffer.getBytes(pos + 5, pos + 5 + length);
+        try {
+            return Trans.event_data.parseFrom(payloadCompressor.decompress(bytes,
+                    flag == DEFLATE ? PayloadCompressor.DEFLATE : null));
+        } catch (DataFormatException | InvalidProtocolBufferException e) {
+            throw new RuntimeException("event_data解码失败", e);
+        }
+    }
+
+    @Override
+    public Trans.event_data transform(Trans.event_data event) {
+        return event;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -0,0 +1,30 @@
+package com.mcode.gateway.rpc.serialization;
+
+/**
+ * 线程本地的event_data编码器，复用Builder，减少发送热路径上的临时对象
+ * 用法：
+ * Trans.event_data.Builder builder = EventEncoder.builder();
+ * byte[] bytes = EventEncoder.encode(builder.setType(..).setSerialNumber(..));
+ * 注意：builder()返回的是当前线程共享的Builder，在encode之前不能再次调用builder()
+ */
+public final class EventEncoder {
+    private static final ThreadLocal<Trans.event_data.Builder> LOCAL_BUILDER =
+            ThreadLocal.withInitial(Trans.event_data::newBuilder);
+
+    private EventEncoder() {
+    }
+
+    /**
+     * 获取当前线程已清空的Builder
+     */
+    public static Trans.event_data.Builder builder() {
+        return LOCAL_BUILDER.get().clear();
+    }
+
+    /**
+     * 序列化，按getSerializedSize预分配结果数组后直接写入，不经过中间缓冲区
+     */
+    public static byte[] encode(Trans.event_data.Builder builder) {
+        return builder.build().toByteArray();
+    }
+}
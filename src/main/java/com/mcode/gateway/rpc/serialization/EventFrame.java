@@ -0,0 +1,193 @@
+package com.mcode.gateway.rpc.serialization;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+/**
+ * event_data的路由视图
+ * 路由只需要type、serialNumber、nodeArtifactId、eqId，这几个字段优先取connector设置的mq消息头，
+ * 没有消息头时只扫描wire字节中的这几个字段，msg、uri等其余字段跳过不解码
+ * 完整的event_data在{@link #decode()}时才解压、解析，由事件通道线程在确定有处理器之后调用，
+ * 未注册类型或被丢弃的事件不产生完整解析的开销
+ * 同一帧只在一条通道线程中处理，decode的结果缓存在帧内
+ */
+public final class EventFrame {
+    /**
+     * connector可选设置的路由消息头
+     */
+    public static final String HEADER_TYPE = "eventType";
+    public static final String HEADER_SERIAL_NUMBER = "serialNumber";
+    public static final String HEADER_NODE_ARTIFACT_ID = "nodeArtifactId";
+    public static final String HEADER_EQ_ID = "eqId";
+    private static final int TYPE_FIELD_NUMBER = 1;
+    private static final int SERIAL_NUMBER_FIELD_NUMBER = 2;
+    private static final int NODE_ARTIFACT_ID_FIELD_NUMBER = 4;
+    private static final int EQ_ID_FIELD_NUMBER = 5;
+    private final int type;
+    private final String serialNumber;
+    private final String nodeArtifactId;
+    private final String eqId;
+    private byte[] body;
+    private Object encoding;
+    private PayloadCompressor payloadCompressor;
+    private Trans.event_data event;
+    private long enqueueNanos;
+
+    private EventFrame(int type, String serialNumber, String nodeArtifactId, String eqId) {
+        this.type = type;
+        this.serialNumber = serialNumber;
+        this.nodeArtifactId = nodeArtifactId;
+        this.eqId = eqId;
+    }
+
+    /**
+     * 已完整解析的事件
+     */
+    public static EventFrame of(Trans.event_data event) {
+        EventFrame frame = new EventFrame(event.getType(), event.getSerialNumber(), event.getNodeArtifactId(), event.getEqId());
+        frame.event = event;
+        return frame;
+    }
+
+    /**
+     * 从mq消息构造路由视图
+     * 消息头带齐路由字段时连解压也推迟到decode，否则解压后扫描路由字段
+     *
+     * @param encoding 消息头中的压缩标记
+     */
+    public static EventFrame wrap(Map<String, Object> headers, byte[] body, Object encoding,
+                                  PayloadCompressor payloadCompressor) throws IOException {
+        EventFrame frame = fromHeaders(headers);
+        if (frame == null) {
+            try {
+                body = payloadCompressor.decompress(body, encoding);
+            } catch (DataFormatException e) {
+                throw new InvalidProtocolBufferException(e.getMessage());
+            }
+            encoding = null;
+            frame = scan(body);
+        }
+        frame.body = body;
+        frame.encoding = encoding;
+        frame.payloadCompressor = payloadCompressor;
+        return frame;
+    }
+
+    private static EventFrame fromHeaders(Map<String, Object> headers) {
+        Object type;
+        Object serialNumber;
+        if (headers == null || (type = headers.get(HEADER_TYPE)) == null ||
+                (serialNumber = headers.get(HEADER_SERIAL_NUMBER)) == null) {
+            return null;
+        }
+        try {
+            return new EventFrame(Integer.parseInt(type.toString()), serialNumber.toString(),
+                    header(headers, HEADER_NODE_ARTIFACT_ID), header(headers, HEADER_EQ_ID));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String header(Map<String, Object> headers, String name) {
+        Object value = headers.get(name);
+        return value == null ? "" : value.toString();
+    }
+
+    /**
+     * 只读取路由字段，其余字段按wire类型跳过
+     */
+    private static EventFrame scan(byte[] bytes) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(bytes);
+        int type = 0;
+        String serialNumber = "";
+        String nodeArtifactId = "";
+        String eqId = "";
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case TYPE_FIELD_NUMBER:
+                    type = input.readSFixed32();
+                    break;
+                case SERIAL_NUMBER_FIELD_NUMBER:
+                    serialNumber = input.readStringRequireUtf8();
+                    break;
+                case NODE_ARTIFACT_ID_FIELD_NUMBER:
+                    nodeArtifactId = input.readStringRequireUtf8();
+                    break;
+                case EQ_ID_FIELD_NUMBER:
+                    eqId = input.readStringRequireUtf8();
+                    break;
+                default:
+                    if (!input.skipField(tag)) {
+                        return new EventFrame(type, serialNumber, nodeArtifactId, eqId);
+                    }
+            }
+        }
+        return new EventFrame(type, serialNumber, nodeArtifactId, eqId);
+    }
+
+    /**
+     * 解压并解析完整的event_data，结果缓存
+     *
+     * @throws InvalidProtocolBufferException 消息体无法解压或解析
+     */
+    public Trans.event_data decode() throws InvalidProtocolBufferException {
+        if (event == null) {
+            try {
+                event = Trans.event_data.parseFrom(payloadCompressor.decompress(body, encoding));
+            } catch (DataFormatException e) {
+                throw new InvalidProtocolBufferException(e.getMessage());
+            }
+            body = null;
+        }
+        return event;
+    }
+
+    /**
+     * 分区键，设备事件为eqId，节点级事件为nodeArtifactId，两者皆无时为流水号
+     */
+    public String partitionKey() {
+        if (!eqId.isEmpty()) {
+            return eqId;
+        }
+        return nodeArtifactId.isEmpty() ? serialNumber : nodeArtifactId;
+    }
+
+    /**
+     * 记录入队时间，用于统计排队耗时
+     */
+    public void markEnqueued() {
+        enqueueNanos = System.nanoTime();
+    }
+
+    public long getEnqueueNanos() {
+        return enqueueNanos;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    public String getNodeArtifactId() {
+        return nodeArtifactId;
+    }
+
+    public String getEqId() {
+        return eqId;
+    }
+
+    @Override
+    public String toString() {
+        return "EventFrame{type=" + type + ", serialNumber=" + serialNumber +
+                ", nodeArtifactId=" + nodeArtifactId + ", eqId=" + eqId + "}";
+    }
+}
@@ -0,0 +1,136 @@
+package com.mcode.gateway.rpc.serialization;
+
+import com.mcode.gateway.configuration.CommonConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 消息体压缩
+ * 超过阈值的消息以deflate压缩，并在mq消息头中标记compression=deflate，接收端据此透明解压
+ * eventBus中的消息由{@link EventDataCodec}在跨节点编码时压缩
+ * 压缩后体积未减小的消息原样发送，不加标记
+ * Deflater/Inflater每条线程持有一个，复用其内部缓冲区
+ */
+@Slf4j
+@Component
+public class PayloadCompressor {
+    /**
+     * 压缩标记消息头
+     */
+    public static final String HEADER = "compression";
+    public static final String DEFLATE = "deflate";
+    private static final int INFLATE_BUFFER_SIZE = 8192;
+    @Resource
+    private CommonConfig commonConfig;
+    private final ThreadLocal<Deflater> deflater = ThreadLocal.withInitial(() -> new Deflater(commonConfig.getCompressionLevel()));
+    private final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(Inflater::new);
+    private final ThreadLocal<byte[]> inflateBuffer = ThreadLocal.withInitial(() -> new byte[INFLATE_BUFFER_SIZE]);
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressedCount = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * 是否需要尝试压缩
+     */
+    public boolean shouldCompress(byte[] raw) {
+        return commonConfig.isCompressionEnabled() && raw.length >= commonConfig.getCompressionThreshold();
+    }
+
+    /**
+     * 压缩消息体
+     *
+     * @return 压缩后的消息体，压缩后体积未减小时返回null
+     */
+    public byte[] compress(byte[] raw) {
+        long start = System.nanoTime();
+        Deflater deflater = this.deflater.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] buffer = new byte[raw.length];
+        int length = 0;
+        while (!deflater.finished() && length < buffer.length) {
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        compressNanos.add(System.nanoTime() - start);
+        if (!deflater.finished()) {
+            skippedCount.increment();
+            return null;
+        }
+        compressedCount.increment();
+        rawBytes.add(raw.length);
+        compressedBytes.add(length);
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * 按消息头标记解压，未标记的消息原样返回，解压后超过maxDecompressedSize时抛出异常
+     *
+     * @param encoding 消息头中的压缩标记
+     */
+    public byte[] decompress(byte[] data, Object encoding) throws DataFormatException {
+        if (encoding == null) {
+            return data;
+        }
+        if (!DEFLATE.equals(encoding.toString())) {
+            throw new DataFormatException("不支持的压缩格式:" + encoding);
+        }
+        long start = System.nanoTime();
+        Inflater inflater = this.inflater.get();
+        inflater.reset();
+        inflater.setInput(data);
+        byte[] buffer = inflateBuffer.get();
+        int maxSize = commonConfig.getMaxDecompressedSize();
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min((long) data.length * 4, maxSize));
+        while (!inflater.finished()) {
+            int length = inflater.inflate(buffer);
+            if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("压缩数据不完整");
+            }
+            if (out.size() + length > maxSize) {
+                rejectedCount.increment();
+                throw new DataFormatException("解压后超过" + maxSize + "字节上限");
+            }
+            out.write(buffer, 0, length);
+        }
+        decompressNanos.add(System.nanoTime() - start);
+        decompressedCount.increment();
+        return out.toByteArray();
+    }
+
+    /**
+     * 压缩率及压缩、解压的cpu耗时
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long compressed = compressedCount.sum();
+        long skipped = skippedCount.sum();
+        long raw = rawBytes.sum();
+        long decompressed = decompressedCount.sum();
+        stats.put("compressed", compressed);
+        stats.put("skipped", skipped);
+        stats.put("rawBytes", raw);
+        stats.put("compressedBytes", compressedBytes.sum());
+        stats.put("ratio", raw == 0 ? 1.0 : (double) compressedBytes.sum() / raw);
+        stats.put("avgCompressMicros", compressed + skipped == 0 ? 0 : compressNanos.sum() / (compressed + skipped) / 1000);
+        stats.put("decompressed", decompressed);
+        stats.put("rejected", rejectedCount.sum());
+        stats.put("avgDecompressMicros", decompressed == 0 ? 0 : decompressNanos.sum() / decompressed / 1000);
+        return stats;
+    }
+}
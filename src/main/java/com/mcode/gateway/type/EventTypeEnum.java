@@ -22,6 +22,36 @@ public enum EventTypeEnum {
     DUMP(20,"dump_thread");
     private int type;
     private String desc;
+    /**
+     * 按事件类型码索引的枚举，每条上行消息都要查找，不遍历values()
+     */
+    private static final EventTypeEnum[] BY_CODE;
+    /**
+     * 控制事件，走独立的控制队列及控制通道，不受数据上报量影响，按事件类型码索引
+     */
+    private static final boolean[] CONTROL_EVENTS;
+    /**
+     * 应答事件，对应的请求登记在发起请求的dispatcher节点上（rpc回调、qos1备份、广播汇总、监控等待），按事件类型码索引
+     */
+    private static final boolean[] RESPONSE_EVENTS;
+
+    static {
+        int max = 0;
+        for (EventTypeEnum eventTypeEnum : values()) {
+            max = Math.max(max, eventTypeEnum.type);
+        }
+        BY_CODE = new EventTypeEnum[max + 1];
+        CONTROL_EVENTS = new boolean[max + 1];
+        RESPONSE_EVENTS = new boolean[max + 1];
+        for (EventTypeEnum eventTypeEnum : values()) {
+            BY_CODE[eventTypeEnum.type] = eventTypeEnum;
+        }
+        for (EventTypeEnum eventTypeEnum : new EventTypeEnum[]{PING, PONG, INSTANCE_REGISTER, DEVICE_LOGIN}) {
+            CONTROL_EVENTS[eventTypeEnum.type] = true;
+        }
+        RESPONSE_EVENTS[CLIENT_RESPONSE.type] = true;
+        RESPONSE_EVENTS[MONITOR_DATA.type] = true;
+    }
 
     EventTypeEnum(int type, String desc) {
         this.type = type;
@@ -37,12 +67,15 @@ public enum EventTypeEnum {
     }
 
     public static EventTypeEnum getEnumByCode(int code) {
-        for (EventTypeEnum eventTypeEnum : EventTypeEnum.values()) {
-            if (code == eventTypeEnum.type) {
-                return eventTypeEnum;
-            }
-        }
-        return null;
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    public static boolean isControl(int code) {
+        return code >= 0 && code < CONTROL_EVENTS.length && CONTROL_EVENTS[code];
+    }
+
+    public static boolean isResponse(int code) {
+        return code >= 0 && code < RESPONSE_EVENTS.length && RESPONSE_EVENTS[code];
     }
 
     @Override
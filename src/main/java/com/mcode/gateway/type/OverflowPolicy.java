@@ -0,0 +1,20 @@
+package com.mcode.gateway.type;
+
+/**
+ * 发送队列已满时的处理策略
+ */
+public enum OverflowPolicy {
+    /**
+     * 阻塞等待，超过publishBlockTimeout仍未入队则丢弃
+     * event loop、publisher、amqp回调、rpc超时线程不阻塞，改为溢写
+     */
+    BLOCK,
+    /**
+     * 立即失败，抛出异常给调用方（HTTP请求直接返回错误）
+     */
+    FAIL_FAST,
+    /**
+     * 溢写到本地磁盘，稍后重新投递
+     */
+    SPILL
+}
@@ -0,0 +1,21 @@
+package com.mcode.gateway.type;
+
+/**
+ * 批量推送中单条指令的处理结果
+ */
+public enum PublishStatus {
+    SENT("已发送"),
+    INVALID("参数错误"),
+    UNREGISTERED("该设备不存在或未注册"),
+    OFFLINE("该设备不在线"),
+    REJECTED("发送队列已满，请稍后重试");
+    private String desc;
+
+    PublishStatus(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
@@ -2,22 +2,15 @@ package com.mcode.gateway.util;
 
 import com.mcode.gateway.exception.NullParamException;
 import com.mcode.gateway.mvc.NotNull;
+import com.mcode.gateway.mvc.NotNullValidator;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.DigestUtils;
 
 import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.util.LinkedList;
-import java.util.List;
 
 @Slf4j
 public class CommonUtil {
-    private static final String GET = "get";
-
     public String MD5(String message){
         try {
             return DigestUtils.md5DigestAsHex(message.getBytes("UTF-8"));
@@ -41,36 +34,13 @@ public class CommonUtil {
             }
         }
     }
+    /**
+     * 校验DTO中标注了{@link NotNull}的字段，字段解析结果按DTO类型缓存
+     */
     public void validDTOEmpty(Object dto) {
         if (null == dto) {
             throw new NullParamException("DTO");
         }
-        List<String> fieldNames = new LinkedList<>();
-        Class<?> aClass = dto.getClass();
-        Field[] fields = aClass.getDeclaredFields();
-        for (Field field : fields) {
-            int modifiers = field.getModifiers();
-            if ((modifiers & Modifier.STATIC) == 0 && (modifiers & Modifier.FINAL) == 0) {
-                if (field.isAnnotationPresent(NotNull.class)) {
-                    fieldNames.add(field.getName());
-                }
-            }
-        }
-        for (String fieldName : fieldNames) {
-            Method method;
-            Object invoke;
-            try {
-                String methodName = GET + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
-                method = aClass.getMethod(methodName);
-                method.setAccessible(Boolean.TRUE);
-                invoke = method.invoke(dto);
-            } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-                log.warn("valid param exception:" + e.getMessage(), e);
-                return;
-            }
-            doValid(fieldName, invoke);
-        }
+        NotNullValidator.of(dto.getClass()).validate(dto);
     }
-
-
 }
@@ -0,0 +1,93 @@
+package com.mcode.gateway.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界无锁多生产者单消费者环形队列
+ * 槽位在创建时预分配，每个槽位带一个序号：生产者CAS抢占tail后写入元素并发布序号，消费者按序号判断槽位是否可读，
+ * 入队/出队均不加锁，生产者之间仅在tail上竞争
+ * 注意：poll只能由同一条线程调用
+ */
+public class MpscRingBuffer<E> {
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    public MpscRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * 入队
+     *
+     * @return 队列已满返回false
+     */
+    public boolean offer(E e) {
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = e;
+                    //发布槽位，消费者可见
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 出队，仅限消费者线程调用
+     *
+     * @return 队列为空返回null
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head;
+        int index = (int) (pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        E e = (E) buffer[index];
+        buffer[index] = null;
+        //释放槽位给下一圈的生产者
+        sequences.lazySet(index, pos + mask + 1);
+        head = pos + 1;
+        return e;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 当前队列深度（近似值）
+     */
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, buffer.length));
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+}
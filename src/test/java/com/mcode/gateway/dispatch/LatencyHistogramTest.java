@@ -0,0 +1,63 @@
+package com.mcode.gateway.dispatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    /**
+     * 单独记录value后再记录一个极大值，p50即value所在桶的上界
+     */
+    private static long bucketUpperBound(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(Long.MAX_VALUE / 2);
+        return histogram.percentile(50);
+    }
+
+    @Test
+    public void linearBucketsAreExact() {
+        for (long value = 0; value < 16; value++) {
+            assertEquals(value, bucketUpperBound(value));
+        }
+    }
+
+    @Test
+    public void bucketUpperBoundWithinRelativeError() {
+        for (long value = 16; value < (1L << 41); value = value * 9 / 8 + 1) {
+            long upper = bucketUpperBound(value);
+            assertTrue(value + " -> " + upper, upper >= value);
+            assertTrue(value + " -> " + upper, upper - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void bucketBoundariesAreContiguous() {
+        //每个2的幂区间的首个值落在新桶，前一个值落在上一个桶的上界
+        for (int magnitude = 4; magnitude <= 40; magnitude++) {
+            long start = 1L << magnitude;
+            assertEquals(start - 1, bucketUpperBound(start - 1));
+            assertEquals(start + (start >> 3) - 1, bucketUpperBound(start));
+        }
+    }
+
+    @Test
+    public void percentileIsClampedToMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000, 100);
+        assertEquals(100, histogram.count());
+        assertEquals(1000, histogram.percentile(99.9));
+        assertEquals(1000L, histogram.stats().get("avgMicros"));
+        assertEquals(0, new LatencyHistogram().percentile(99));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.percentile(100));
+        assertEquals(1, histogram.count());
+    }
+}
@@ -0,0 +1,64 @@
+package com.mcode.gateway.mvc;
+
+import io.vertx.core.http.HttpMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RouteTrieTest {
+    private RouteTrie routeTrie;
+    private MappingEntry publish;
+    private MappingEntry batch;
+    private MappingEntry root;
+
+    public String handle() {
+        return "";
+    }
+
+    private MappingEntry entry() throws Exception {
+        return new MappingEntry(this, RouteTrieTest.class.getMethod("handle"), new String[0], null, null);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        routeTrie = new RouteTrie();
+        publish = entry();
+        batch = entry();
+        root = entry();
+        routeTrie.add(HttpMethod.POST, "/device/instruction/publish", publish);
+        routeTrie.add(HttpMethod.POST, "/device/instruction/publish/batch", batch);
+        routeTrie.add(HttpMethod.GET, "/", root);
+    }
+
+    @Test
+    public void matchesExactPaths() {
+        assertSame(publish, routeTrie.get(HttpMethod.POST, "/device/instruction/publish"));
+        assertSame(batch, routeTrie.get(HttpMethod.POST, "/device/instruction/publish/batch"));
+        assertSame(root, routeTrie.get(HttpMethod.GET, "/"));
+        assertSame(root, routeTrie.get(HttpMethod.GET, ""));
+    }
+
+    @Test
+    public void repeatedAndTrailingSlashesAreIgnored() {
+        assertSame(publish, routeTrie.get(HttpMethod.POST, "//device///instruction/publish/"));
+        assertSame(publish, routeTrie.get(HttpMethod.POST, "device/instruction/publish"));
+    }
+
+    @Test
+    public void unknownPathsAndMethodsMiss() {
+        assertNull(routeTrie.get(HttpMethod.GET, "/device/instruction/publish"));
+        assertNull(routeTrie.get(HttpMethod.POST, "/device/instruction"));
+        assertNull(routeTrie.get(HttpMethod.POST, "/device/instruction/publis"));
+        assertNull(routeTrie.get(HttpMethod.POST, "/device/instruction/publish/batch/more"));
+        assertNull(routeTrie.get(HttpMethod.DELETE, "/"));
+    }
+
+    @Test
+    public void laterRegistrationOverrides() throws Exception {
+        MappingEntry replacement = entry();
+        routeTrie.add(HttpMethod.POST, "/device/instruction/publish/", replacement);
+        assertSame(replacement, routeTrie.get(HttpMethod.POST, "/device/instruction/publish"));
+    }
+}
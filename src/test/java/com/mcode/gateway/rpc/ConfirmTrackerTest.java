@@ -0,0 +1,103 @@
+package com.mcode.gateway.rpc;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConfirmTrackerTest {
+    private final List<String> acked = new ArrayList<>();
+    private final List<String> nacked = new ArrayList<>();
+
+    @BeforeClass
+    public static void defaultTimeout() {
+        PublishEvent.setDefaultTimeout(6000);
+    }
+
+    private PublishEvent event(String serialNumber) {
+        PublishEvent event = new PublishEvent("queue", new byte[0], serialNumber);
+        event.onConfirm(e -> acked.add(e.getSerialNumber()), e -> nacked.add(e.getSerialNumber()));
+        return event;
+    }
+
+    @Test
+    public void singleAckOnlyConfirmsThatSeqNo() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        tracker.track(1, event("1"));
+        tracker.track(2, event("2"));
+        tracker.handleAck(2, false);
+        assertEquals(1, tracker.outstandingCount());
+        assertEquals(1, acked.size());
+        assertEquals("2", acked.get(0));
+        //重复回执忽略
+        tracker.handleAck(2, false);
+        assertEquals(1, acked.size());
+    }
+
+    @Test
+    public void multipleAckConfirmsUpToDeliveryTag() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        for (int i = 1; i <= 5; i++) {
+            tracker.track(i, event(String.valueOf(i)));
+        }
+        tracker.handleAck(3, true);
+        assertEquals(2, tracker.outstandingCount());
+        assertEquals(3, acked.size());
+        assertEquals("1", acked.get(0));
+        assertEquals("3", acked.get(2));
+        tracker.handleNack(5, true);
+        assertEquals(0, tracker.outstandingCount());
+        assertEquals(2, nacked.size());
+        assertEquals("4", nacked.get(0));
+    }
+
+    @Test
+    public void nackIncrementsNackCount() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        PublishEvent event = event("1");
+        tracker.track(1, event);
+        tracker.handleNack(1, false);
+        assertEquals(1, event.getNackCount());
+        assertEquals(1, nacked.size());
+    }
+
+    @Test
+    public void untrackedEventGetsNoCallback() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        tracker.track(1, event("1"));
+        tracker.untrack(1);
+        tracker.handleAck(1, true);
+        assertTrue(acked.isEmpty());
+    }
+
+    @Test
+    public void failAllNacksEveryOutstandingEvent() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        for (int i = 1; i <= 3; i++) {
+            tracker.track(i, event(String.valueOf(i)));
+        }
+        tracker.handleAck(1, false);
+        tracker.failAll();
+        assertEquals(0, tracker.outstandingCount());
+        assertEquals(1, acked.size());
+        assertEquals(2, nacked.size());
+    }
+
+    @Test
+    public void callbackExceptionDoesNotStopFanOut() {
+        ConfirmTracker tracker = new ConfirmTracker();
+        PublishEvent failing = new PublishEvent("queue", new byte[0], "0");
+        failing.onConfirm(e -> {
+            throw new IllegalStateException("callback");
+        }, null);
+        tracker.track(1, failing);
+        tracker.track(2, event("2"));
+        tracker.handleAck(2, true);
+        assertEquals(0, tracker.outstandingCount());
+        assertEquals(1, acked.size());
+    }
+}
@@ -0,0 +1,93 @@
+package com.mcode.gateway.rpc;
+
+import com.mcode.gateway.rpc.serialization.EventEncoder;
+import com.mcode.gateway.rpc.serialization.Trans;
+import com.mcode.gateway.type.EventTypeEnum;
+import com.rabbitmq.client.AMQP;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.IntToLongFunction;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 发送热路径分配率基准：对比原始路径（newBuilder/toByteArray/new PublishEvent/new BasicProperties）
+ * 与池化路径（EventEncoder/PublishEvent.newInstance/PropertiesCache）每条消息在当前线程上分配的字节数
+ * 不在常规构建中运行，运行：mvn test -Dtest=PublishAllocationBenchmark
+ */
+@Slf4j
+public class PublishAllocationBenchmark {
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+    private static final String QUEUE = "equipment_type_1";
+    private static final String[] CONNECTORS = {"connector_1", "connector_2", "connector_3", "connector_4"};
+    private static volatile long sink;
+
+    @Test
+    public void pooledPathAllocatesLess() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        PublishEvent.setDefaultTimeout(6000);
+        PropertiesCache propertiesCache = new PropertiesCache();
+        IntToLongFunction legacy = i -> {
+            byte[] bytes = Trans.event_data.newBuilder().
+                    setType(EventTypeEnum.PONG.getType()).
+                    setSerialNumber("1024").
+                    setDispatcherId("dispatcher_1").
+                    build().toByteArray();
+            PublishEvent publishEvent = new PublishEvent(QUEUE, bytes, "1024");
+            publishEvent.addHeaders(MqConnector.CONNECTOR_ID, CONNECTORS[i & 3]);
+            AMQP.BasicProperties props = new AMQP.BasicProperties().
+                    builder().
+                    deliveryMode(1).
+                    headers(publishEvent.getHeaders()).
+                    build();
+            return bytes.length + props.hashCode();
+        };
+        IntToLongFunction pooled = i -> {
+            byte[] bytes = EventEncoder.encode(EventEncoder.builder().
+                    setType(EventTypeEnum.PONG.getType()).
+                    setSerialNumber("1024").
+                    setDispatcherId("dispatcher_1"));
+            PublishEvent publishEvent = PublishEvent.newInstance(QUEUE, bytes, "1024");
+            publishEvent.addHeaders(MqConnector.CONNECTOR_ID, CONNECTORS[i & 3]);
+            AMQP.BasicProperties props = propertiesCache.of(publishEvent.getHeaders());
+            publishEvent.recycle();
+            return bytes.length + props.hashCode();
+        };
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threadMXBean;
+        run(allocation, legacy, WARMUP);
+        run(allocation, pooled, WARMUP);
+        long[] legacyResult = run(allocation, legacy, ITERATIONS);
+        long[] pooledResult = run(allocation, pooled, ITERATIONS);
+        report("legacy", legacyResult);
+        report("pooled", pooledResult);
+        assertTrue("池化路径的分配量应低于原始路径", pooledResult[0] < legacyResult[0]);
+    }
+
+    /**
+     * @return {分配字节数, 耗时ns}
+     */
+    private static long[] run(com.sun.management.ThreadMXBean threadMXBean, IntToLongFunction task, int iterations) {
+        long threadId = Thread.currentThread().getId();
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long result = 0;
+        for (int i = 0; i < iterations; i++) {
+            result += task.applyAsLong(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = result;
+        return new long[]{threadMXBean.getThreadAllocatedBytes(threadId) - allocated, elapsed};
+    }
+
+    private static void report(String name, long[] result) {
+        log.info("{}: {} bytes/op, {} ops/s", name,
+                String.format("%.1f", (double) result[0] / ITERATIONS),
+                String.format("%.0f", ITERATIONS / (result[1] / 1_000_000_000d)));
+    }
+}
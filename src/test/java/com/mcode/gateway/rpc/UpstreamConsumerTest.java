@@ -0,0 +1,84 @@
+package com.mcode.gateway.rpc;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class UpstreamConsumerTest {
+    private Channel channel;
+    private UpstreamConsumer consumer;
+    private final List<Integer> routed = new ArrayList<>();
+    private boolean full;
+
+    @Before
+    public void setUp() {
+        channel = mock(Channel.class);
+        consumer = new UpstreamConsumer(channel, "up", false, 100, (properties, body) -> {
+            if (full) {
+                return false;
+            }
+            routed.add((int) body[0]);
+            return true;
+        });
+    }
+
+    private void deliver(int tag) {
+        consumer.handleDelivery("tag", new Envelope(tag, false, "", "up"), new AMQP.BasicProperties(), new byte[]{(byte) tag});
+    }
+
+    @Test
+    public void rejectedDeliveryAndLaterOnesAreReplayedInOrder() throws Exception {
+        deliver(1);
+        full = true;
+        deliver(2);
+        full = false;
+        //通道已有空位，但暂存消息未重放前新消息仍需排队
+        deliver(3);
+        deliver(4);
+        assertEquals(1, routed.size());
+        assertEquals(3, consumer.backlogSize());
+        consumer.flush();
+        assertEquals(0, consumer.backlogSize());
+        assertEquals(4, routed.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i + 1), routed.get(i));
+        }
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        verify(channel).basicAck(4, true);
+    }
+
+    @Test
+    public void replayStopsAtNextRejection() throws Exception {
+        full = true;
+        deliver(1);
+        deliver(2);
+        consumer.flush();
+        assertEquals(2, consumer.backlogSize());
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        full = false;
+        consumer.flush();
+        assertEquals(0, consumer.backlogSize());
+        verify(channel).basicAck(2, true);
+    }
+
+    @Test
+    public void shutdownDiscardsBacklog() {
+        full = true;
+        deliver(1);
+        consumer.handleShutdownSignal("tag", new ShutdownSignalException(false, false, null, channel));
+        assertEquals(0, consumer.backlogSize());
+    }
+}
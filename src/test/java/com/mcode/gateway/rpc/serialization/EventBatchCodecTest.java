@@ -0,0 +1,71 @@
+package com.mcode.gateway.rpc.serialization;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import com.mcode.gateway.rpc.PublishEvent;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventBatchCodecTest {
+
+    @BeforeClass
+    public static void defaultTimeout() {
+        PublishEvent.setDefaultTimeout(6000);
+    }
+
+    /**
+     * 按trans.proto中event_batch的定义解码：repeated event_data events = 1
+     */
+    private static List<Trans.event_data> decode(byte[] bytes) throws IOException {
+        List<Trans.event_data> events = new ArrayList<>();
+        CodedInputStream input = CodedInputStream.newInstance(bytes);
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            assertEquals(1, WireFormat.getTagFieldNumber(tag));
+            assertEquals(WireFormat.WIRETYPE_LENGTH_DELIMITED, WireFormat.getTagWireType(tag));
+            events.add(Trans.event_data.parseFrom(input.readBytes()));
+        }
+        return events;
+    }
+
+    private static Trans.event_data event(int i) {
+        return Trans.event_data.newBuilder().
+                setType(i).
+                setSerialNumber("serial-" + i).
+                setEqId("eq-" + i).
+                setMsg(i % 2 == 0 ? "" : "消息" + i).
+                build();
+    }
+
+    @Test
+    public void encodesAsParseableEventBatch() throws Exception {
+        List<PublishEvent> events = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            events.add(new PublishEvent("queue", event(i).toByteArray(), String.valueOf(i)));
+        }
+        List<Trans.event_data> batch = decode(EventBatchCodec.encode(events));
+        assertEquals(events.size(), batch.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(event(i), batch.get(i));
+        }
+    }
+
+    @Test
+    public void emptyMessagesAndEmptyBatch() throws Exception {
+        List<PublishEvent> events = new ArrayList<>();
+        events.add(new PublishEvent("queue", new byte[0], "0"));
+        events.add(new PublishEvent("queue", new byte[0], "1"));
+        List<Trans.event_data> batch = decode(EventBatchCodec.encode(events));
+        assertEquals(2, batch.size());
+        assertEquals(Trans.event_data.getDefaultInstance(), batch.get(1));
+        assertEquals(0, EventBatchCodec.encode(Collections.emptyList()).length);
+    }
+}
@@ -0,0 +1,95 @@
+package com.mcode.gateway.rpc.serialization;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.mcode.gateway.configuration.CommonConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class EventFrameTest {
+    private PayloadCompressor compressor;
+    private final Trans.event_data event = Trans.event_data.newBuilder().
+            setType(3).
+            setSerialNumber("serial").
+            setNodeArtifactId("node-1").
+            setEqId("eq-1").
+            setMsg("msg").
+            setUri("/uri").
+            setTimeStamp(1L).
+            build();
+
+    @Before
+    public void setUp() {
+        CommonConfig commonConfig = new CommonConfig();
+        commonConfig.setCompressionEnabled(true);
+        commonConfig.setCompressionThreshold(0);
+        compressor = new PayloadCompressor();
+        ReflectionTestUtils.setField(compressor, "commonConfig", commonConfig);
+    }
+
+    @Test
+    public void scansRoutingFieldsFromWireBytes() throws Exception {
+        EventFrame frame = EventFrame.wrap(null, event.toByteArray(), null, compressor);
+        assertEquals(3, frame.getType());
+        assertEquals("serial", frame.getSerialNumber());
+        assertEquals("node-1", frame.getNodeArtifactId());
+        assertEquals("eq-1", frame.getEqId());
+        assertEquals("eq-1", frame.partitionKey());
+        assertEquals(event, frame.decode());
+        assertSame(frame.decode(), frame.decode());
+    }
+
+    @Test
+    public void scansCompressedBody() throws Exception {
+        byte[] compressed = compressor.compress(event.toBuilder().setMsg(new String(new char[512]).replace('\0', 'x')).
+                build().toByteArray());
+        EventFrame frame = EventFrame.wrap(new HashMap<>(), compressed, PayloadCompressor.DEFLATE, compressor);
+        assertEquals("serial", frame.getSerialNumber());
+        assertEquals(512, frame.decode().getMsg().length());
+    }
+
+    @Test
+    public void headersTakePrecedenceAndDeferDecode() throws Exception {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put(EventFrame.HEADER_TYPE, "7");
+        headers.put(EventFrame.HEADER_SERIAL_NUMBER, "from-header");
+        headers.put(EventFrame.HEADER_NODE_ARTIFACT_ID, "node-2");
+        EventFrame frame = EventFrame.wrap(headers, event.toByteArray(), null, compressor);
+        assertEquals(7, frame.getType());
+        assertEquals("from-header", frame.getSerialNumber());
+        assertEquals("", frame.getEqId());
+        assertEquals("node-2", frame.partitionKey());
+        assertEquals(event, frame.decode());
+    }
+
+    @Test
+    public void invalidTypeHeaderFallsBackToScan() throws Exception {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put(EventFrame.HEADER_TYPE, "abc");
+        headers.put(EventFrame.HEADER_SERIAL_NUMBER, "from-header");
+        EventFrame frame = EventFrame.wrap(headers, event.toByteArray(), null, compressor);
+        assertEquals(3, frame.getType());
+        assertEquals("serial", frame.getSerialNumber());
+    }
+
+    @Test
+    public void partitionKeyFallsBackToSerialNumber() throws Exception {
+        byte[] bytes = Trans.event_data.newBuilder().setSerialNumber("only-serial").build().toByteArray();
+        assertEquals("only-serial", EventFrame.wrap(null, bytes, null, compressor).partitionKey());
+        assertEquals("", EventFrame.wrap(null, new byte[0], null, compressor).getSerialNumber());
+    }
+
+    @Test(expected = InvalidProtocolBufferException.class)
+    public void truncatedBodyIsRejected() throws Exception {
+        byte[] bytes = event.toByteArray();
+        byte[] truncated = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        EventFrame.wrap(null, truncated, null, compressor);
+    }
+}
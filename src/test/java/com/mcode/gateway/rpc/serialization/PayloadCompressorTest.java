@@ -0,0 +1,107 @@
+package com.mcode.gateway.rpc.serialization;
+
+import com.mcode.gateway.configuration.CommonConfig;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PayloadCompressorTest {
+    private CommonConfig commonConfig;
+    private PayloadCompressor compressor;
+
+    @Before
+    public void setUp() {
+        commonConfig = new CommonConfig();
+        commonConfig.setCompressionEnabled(true);
+        commonConfig.setCompressionThreshold(64);
+        commonConfig.setMaxDecompressedSize(64 * 1024);
+        compressor = new PayloadCompressor();
+        ReflectionTestUtils.setField(compressor, "commonConfig", commonConfig);
+    }
+
+    private static byte[] repeated(int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) 'a');
+        return bytes;
+    }
+
+    @Test
+    public void compressesAboveThresholdOnly() {
+        assertFalse(compressor.shouldCompress(repeated(63)));
+        assertTrue(compressor.shouldCompress(repeated(64)));
+        commonConfig.setCompressionEnabled(false);
+        assertFalse(compressor.shouldCompress(repeated(1024)));
+    }
+
+    @Test
+    public void roundTrip() throws DataFormatException {
+        byte[] raw = repeated(10_000);
+        byte[] compressed = compressor.compress(raw);
+        assertTrue(compressed.length < raw.length);
+        assertArrayEquals(raw, compressor.decompress(compressed, PayloadCompressor.DEFLATE));
+        assertSame(raw, compressor.decompress(raw, null));
+    }
+
+    @Test
+    public void incompressibleDataIsSkipped() {
+        byte[] raw = new byte[256];
+        new Random(1).nextBytes(raw);
+        assertNull(compressor.compress(raw));
+        assertEquals(1L, compressor.stats().get("skipped"));
+    }
+
+    @Test
+    public void rejectsPayloadOverDecompressedLimit() {
+        byte[] bomb = compressor.compress(repeated(64 * 1024 + 1));
+        try {
+            compressor.decompress(bomb, PayloadCompressor.DEFLATE);
+            fail();
+        } catch (DataFormatException e) {
+            assertEquals(1L, compressor.stats().get("rejected"));
+        }
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void rejectsUnknownEncoding() throws DataFormatException {
+        compressor.decompress(repeated(10), "gzip");
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void rejectsTruncatedData() throws DataFormatException {
+        byte[] compressed = compressor.compress(repeated(10_000));
+        compressor.decompress(Arrays.copyOf(compressed, compressed.length / 2), PayloadCompressor.DEFLATE);
+    }
+
+    @Test
+    public void eventDataCodecRoundTrip() {
+        EventDataCodec codec = new EventDataCodec(compressor);
+        Trans.event_data small = Trans.event_data.newBuilder().setType(1).setSerialNumber("1").build();
+        Trans.event_data large = Trans.event_data.newBuilder().setType(2).setSerialNumber("2").
+                setMsg(new String(repeated(4096))).build();
+        Buffer buffer = Buffer.buffer();
+        buffer.appendString("prefix");
+        int smallPos = buffer.length();
+        codec.encodeToWire(buffer, small);
+        int largePos = buffer.length();
+        codec.encodeToWire(buffer, large);
+        assertEquals(small, codec.decodeFromWire(smallPos, buffer));
+        assertEquals(large, codec.decodeFromWire(largePos, buffer));
+        //大消息以deflate压缩写入
+        assertEquals(1, buffer.getByte(largePos));
+        assertTrue(buffer.length() - largePos < large.getSerializedSize());
+        assertSame(large, codec.transform(large));
+    }
+}